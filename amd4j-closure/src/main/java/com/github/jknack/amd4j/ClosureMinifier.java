@@ -41,6 +41,10 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
+import com.google.debugging.sourcemap.FilePosition;
+import com.google.debugging.sourcemap.SourceMapConsumerV3;
+import com.google.debugging.sourcemap.SourceMapConsumerV3.EntryVisitor;
+import com.google.debugging.sourcemap.SourceMapParseException;
 import com.google.javascript.jscomp.CheckLevel;
 import com.google.javascript.jscomp.ClosureCodingConvention;
 import com.google.javascript.jscomp.CommandLineRunner;
@@ -151,27 +155,86 @@ public class ClosureMinifier extends Minifier {
 
   @Override
   public CharSequence minify(final Config config, final CharSequence source) {
+    return compile(config, source, null);
+  }
+
+  @Override
+  public CharSequence minify(final Config config, final CharSequence source,
+      final SourceMap sourceMap) {
+    return compile(config, source, notNull(sourceMap, "The sourceMap is required."));
+  }
+
+  /**
+   * Compile the source and compose the given source map with the one generated by closure.
+   *
+   * @param config The configuration options.
+   * @param source The JavaScript code.
+   * @param sourceMap The source map of the JavaScript code or null.
+   * @return A minified output.
+   */
+  private CharSequence compile(final Config config, final CharSequence source,
+      final SourceMap sourceMap) {
     final CompilerOptions options = new CompilerOptions();
     options.setCodingConvention(new ClosureCodingConvention());
     options.setOutputCharset("UTF-8");
     options.setWarningLevel(DiagnosticGroups.CHECK_VARIABLES, CheckLevel.WARNING);
     compilationLevel.setOptionsForCompilationLevel(options);
+    String fname = removeExtension(config.getName()) + ".js";
+    if (sourceMap != null) {
+      options.setSourceMapOutputPath(fname + ".map");
+      options.setSourceMapFormat(com.google.javascript.jscomp.SourceMap.Format.V3);
+    }
 
     Compiler.setLoggingLevel(Level.SEVERE);
     Compiler compiler = new Compiler();
     compiler.disableThreads();
     compiler.initOptions(options);
 
-    String fname = removeExtension(config.getName()) + ".js";
     Result result = compiler.compile(defaultExterns,
         Arrays.asList(SourceFile.fromCode(fname, source.toString())), options);
     if (result.success) {
-      return compiler.toSource();
+      String output = compiler.toSource();
+      if (sourceMap != null) {
+        sourceMap.compose(sourceMap(compiler, fname));
+      }
+      return output;
     }
     JSError[] errors = result.errors;
     throw new IllegalStateException(errors[0].toString());
   }
 
+  /**
+   * Read the source map generated by closure.
+   *
+   * @param compiler The closure compiler.
+   * @param fname The file's name.
+   * @return The source map of the minified output.
+   */
+  private static SourceMap sourceMap(final Compiler compiler, final String fname) {
+    try {
+      StringBuilder json = new StringBuilder();
+      compiler.getSourceMap().appendTo(json, fname);
+      SourceMapConsumerV3 consumer = new SourceMapConsumerV3();
+      consumer.parse(json.toString());
+      final SourceMap sourceMap = new SourceMap();
+      final int source = sourceMap.addSource(fname, null);
+      consumer.visitMappings(new EntryVisitor() {
+        @Override
+        public void visit(final String sourceName, final String symbolName,
+            final FilePosition sourceStartPosition, final FilePosition startPosition,
+            final FilePosition endPosition) {
+          sourceMap.addMapping(startPosition.getLine(), startPosition.getColumn(), source,
+              sourceStartPosition.getLine(), sourceStartPosition.getColumn());
+        }
+      });
+      return sourceMap;
+    } catch (IOException ex) {
+      throw new IllegalStateException("Can't generate source map of: " + fname, ex);
+    } catch (SourceMapParseException ex) {
+      throw new IllegalStateException("Can't read source map of: " + fname, ex);
+    }
+  }
+
   /**
    * Build the default list of google closure external variable files.
    * Taken from: com.google.javascript.jscomp.CommandLineRunner
@@ -0,0 +1,58 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.google.debugging.sourcemap.FilePosition;
+import com.google.debugging.sourcemap.SourceMapConsumerV3;
+import com.google.debugging.sourcemap.SourceMapConsumerV3.EntryVisitor;
+import com.google.javascript.jscomp.CompilationLevel;
+
+public class ClosureMinifierTest {
+
+  @Test
+  public void composeSourceMap() throws Exception {
+    String input = "\nvar a = 1;\ndefine('x',[],function (b) {\n  return a + b;\n});\n";
+    SourceMap sourceMap = new SourceMap();
+    int source = sourceMap.addSource("x.js", null);
+    sourceMap.addMapping(1, 0, source, 0, 0);
+    // 'x',[], was inserted by the transformer
+    sourceMap.addMapping(2, 0, source, 1, 0);
+    sourceMap.addMapping(2, 14, source, 1, 7);
+    sourceMap.addMapping(3, 0, source, 2, 0);
+    sourceMap.addMapping(4, 0, source, 3, 0);
+
+    String output = new ClosureMinifier(CompilationLevel.WHITESPACE_ONLY)
+        .minify(new Config("x"), input, sourceMap).toString();
+    assertTrue(output, output.startsWith("var a=1;define(\"x\",[],function(b){return a+b})"));
+
+    Map<Integer, String> mappings = mappings(sourceMap);
+    assertEquals("x.js:0:4", mappings.get(output.indexOf("a=1")));
+    assertEquals("x.js:1:7", mappings.get(output.indexOf("function")));
+    assertEquals("x.js:1:17", mappings.get(output.indexOf("b)")));
+    assertEquals("x.js:2:13", mappings.get(output.lastIndexOf("b")));
+  }
+
+  private static Map<Integer, String> mappings(final SourceMap sourceMap) throws Exception {
+    SourceMapConsumerV3 consumer = new SourceMapConsumerV3();
+    // this version of the consumer requires a lineCount and a separator after the last line
+    consumer.parse(sourceMap.toJson("x.min.js").replace("{", "{\"lineCount\":1,")
+        .replace("\"}", ";\"}"));
+    final Map<Integer, String> mappings = new HashMap<Integer, String>();
+    consumer.visitMappings(new EntryVisitor() {
+      @Override
+      public void visit(final String sourceName, final String symbolName,
+          final FilePosition sourceStartPosition, final FilePosition startPosition,
+          final FilePosition endPosition) {
+        mappings.put(startPosition.getColumn(), sourceName + ":" + sourceStartPosition.getLine()
+            + ":" + sourceStartPosition.getColumn());
+      }
+    });
+    return mappings;
+  }
+}
@@ -20,12 +20,21 @@ package com.github.jknack.amd4j;
 import static org.apache.commons.io.FilenameUtils.getExtension;
 import static org.apache.commons.io.FilenameUtils.getPath;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notEmpty;
 import static org.apache.commons.lang3.Validate.notNull;
+import static org.apache.commons.lang3.Validate.validState;
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -67,11 +76,135 @@ import org.slf4j.LoggerFactory;
  *       .optimize(new Config("myModule", "output.bundle.js"));
  * </pre>
  *
+ * <p>
+ * Thread-safety:
+ * </p>
+ * An {@link Amd4j} instance is immutable: the <code>with</code> methods return a new instance.
+ * Each call to {@link #analyze(Config)} or {@link #optimize(Config)} works on its own module
+ * registry and on a snapshot of the configuration options, so a configured instance can be
+ * shared by concurrent builds (like the request threads of a web application) without
+ * locking.
+ *
  * @author edgar.espina
  * @since 0.1.0
  */
 public class Amd4j {
 
+  /**
+   * Optimize the nested <code>require</code> calls of an output into chunks. See
+   * {@link Config#isSplitNestedDependencies()}.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  private final class Splitter {
+
+    /**
+     * The optimized module.
+     */
+    private final Module output;
+
+    /**
+     * The configuration options of the output.
+     */
+    private final Config config;
+
+    /**
+     * The minifier.
+     */
+    private final Minifier minifier;
+
+    /**
+     * The split points found so far, each split point is optimized once.
+     */
+    private final Set<Set<String>> splitPoints = new HashSet<Set<String>>();
+
+    /**
+     * The number of chunks.
+     */
+    private int chunks;
+
+    /**
+     * Creates a new {@link Splitter}.
+     *
+     * @param output The optimized module.
+     * @param config The configuration options of the output.
+     * @param minifier The minifier.
+     */
+    public Splitter(final Module output, final Config config, final Minifier minifier) {
+      this.output = output;
+      this.config = config;
+      this.minifier = minifier;
+    }
+
+    /**
+     * Optimize the nested <code>require</code> calls of the given modules into chunks.
+     *
+     * @param loaded The modules loaded by the output or the chunk (and its parent chunks).
+     * @param modules The modules with the nested <code>require</code> calls.
+     */
+    public void split(final Set<Module> loaded, final List<Module> modules) {
+      for (Module module : modules) {
+        for (Set<String> splitPoint : DependencyCollector.splitPoints(config, module)) {
+          Set<String> names = new LinkedHashSet<String>();
+          for (String name : splitPoint) {
+            names.add(name.replace(RELATIVE_EXPRESSION, getPath(module.name)));
+          }
+          if (!names.isEmpty() && splitPoints.add(names)) {
+            chunk(loaded, names);
+          }
+        }
+      }
+    }
+
+    /**
+     * Optimize a split point into a chunk, without the modules that are loaded already.
+     *
+     * @param loaded The modules loaded by the output or the chunk (and its parent chunks).
+     * @param names The modules of the split point.
+     */
+    private void chunk(final Set<Module> loaded, final Set<String> names) {
+      Map<ResourceURI, Module> registry = new HashMap<ResourceURI, Module>();
+      for (Module module : loaded) {
+        registry.put(module.uri, module);
+      }
+      ResourceURI.Pool pool = new ResourceURI.Pool();
+      List<Module> roots = new ArrayList<Module>();
+      for (String name : names) {
+        Module root = walk(name, name, config, registry, pool);
+        if (root != null && !loaded.contains(root) && !roots.contains(root)) {
+          roots.add(root);
+        }
+      }
+      if (roots.isEmpty()) {
+        return;
+      }
+      chunks++;
+      Config chunk = new Config(config).setName(config.getName() + "-" + chunks);
+      try {
+        chunk.setOut(chunkFile(config.getOutFile(), chunks));
+      } catch (IOException ex) {
+        throw new AmdException(config.getName(), ex);
+      }
+      logger.debug("chunk {}: {}", chunks, names);
+      new Optimizer(chunk.snapshot(), transformers, cache, minifier).walk(roots, loaded);
+      for (Module root : roots) {
+        output.addChunk(root);
+      }
+
+      Set<Module> chunkLoaded = new HashSet<Module>(loaded);
+      List<Module> chunkModules = new ArrayList<Module>();
+      for (Module root : roots) {
+        for (Module module : root.getDependencies(true)) {
+          if (chunkLoaded.add(module)) {
+            chunkModules.add(module);
+          }
+        }
+      }
+      split(chunkLoaded, chunkModules);
+    }
+  }
+
   /**
    * Relative expression.
    */
@@ -85,33 +218,114 @@ public class Amd4j {
   /**
    * The list of transformer to apply.
    */
-  private LinkedList<Transformer> transformers = new LinkedList<Transformer>();
+  private final List<Transformer> transformers;
 
   /**
    * The resource loader.
    */
-  private ResourceLoader loader = new ClasspathResourceLoader();
+  private final ResourceLoader loader;
+
+  /**
+   * The transform cache or null.
+   */
+  private final TransformCache cache;
+
+  /**
+   * The minifiers of this instance, by name.
+   */
+  private final Map<String, Minifier> minifiers;
 
   /**
-   * Append a new {@link Transformer}.
+   * Creates a new {@link Amd4j} with no transformers, a {@link ClasspathResourceLoader} and no
+   * cache.
+   */
+  public Amd4j() {
+    this(Collections.<Transformer> emptyList(), new ClasspathResourceLoader(), null,
+        Collections.<String, Minifier> emptyMap());
+  }
+
+  /**
+   * Creates a new {@link Amd4j}.
+   *
+   * @param transformers The list of transformer to apply.
+   * @param loader The resource loader.
+   * @param cache The transform cache or null.
+   * @param minifiers The minifiers of this instance, by name.
+   */
+  private Amd4j(final List<Transformer> transformers, final ResourceLoader loader,
+      final TransformCache cache, final Map<String, Minifier> minifiers) {
+    this.transformers = transformers;
+    this.loader = loader;
+    this.cache = cache;
+    this.minifiers = minifiers;
+  }
+
+  /**
+   * Append a new {@link Transformer}. This instance isn't modified, a copy is returned.
    *
    * @param transformer The transformer to append. Required.
-   * @return This optimizer.
+   * @return A new optimizer.
    */
   public Amd4j with(final Transformer transformer) {
-    transformers.add(notNull(transformer, "The transformer is required."));
-    return this;
+    notNull(transformer, "The transformer is required.");
+    List<Transformer> transformers = new ArrayList<Transformer>(this.transformers);
+    transformers.add(transformer);
+    return new Amd4j(Collections.unmodifiableList(transformers), loader, cache, minifiers);
   }
 
   /**
-   * Set the resource loader to use.
+   * Set the resource loader to use. This instance isn't modified, a copy is returned.
    *
    * @param loader The resource loader. Required.
-   * @return This optimizer.
+   * @return A new optimizer.
    */
   public Amd4j with(final ResourceLoader loader) {
-    this.loader = notNull(loader, "The loader is required.");
-    return this;
+    notNull(loader, "The loader is required.");
+    return new Amd4j(transformers, loader, cache, minifiers);
+  }
+
+  /**
+   * Set the transform cache to use. A cache might be shared between several {@link Amd4j}
+   * instances, so a module is transformed once per build. This instance isn't modified, a copy is
+   * returned.
+   *
+   * @param cache The transform cache. Required.
+   * @return A new optimizer.
+   */
+  public Amd4j with(final TransformCache cache) {
+    notNull(cache, "The cache is required.");
+    return new Amd4j(transformers, loader, cache, minifiers);
+  }
+
+  /**
+   * Register a minifier/optimizer for this instance, it is used when the
+   * {@link Config#setOptimize(String) optimize} option matches the given name. Minifiers of this
+   * instance take precedence over the built-in ones. This instance isn't modified, a copy is
+   * returned.
+   *
+   * @param name The minifier/optimizer name. Required.
+   * @param minifier The minifier/optimizer. Required.
+   * @return A new optimizer.
+   */
+  public Amd4j with(final String name, final Minifier minifier) {
+    notEmpty(name, "The name is required.");
+    notNull(minifier, "The minifier is required.");
+    Map<String, Minifier> minifiers = new HashMap<String, Minifier>(this.minifiers);
+    minifiers.put(name.toLowerCase(), minifier);
+    return new Amd4j(transformers, loader, cache, Collections.unmodifiableMap(minifiers));
+  }
+
+  /**
+   * Get a minifier/optimizer by name: from the minifiers of this instance or from the built-in
+   * ones.
+   *
+   * @param name The minifier/optimizer name. Required.
+   * @return A minifier/optimizer.
+   */
+  public Minifier getMinifier(final String name) {
+    notEmpty(name, "The name is required.");
+    Minifier minifier = minifiers.get(name.toLowerCase());
+    return minifier == null ? Minifier.get(name) : minifier;
   }
 
   /**
@@ -135,25 +349,64 @@ public class Amd4j {
   public Module analyze(final Config config) {
     notNull(config, "The config is required.");
 
-    logger.debug("Tracing dependencies for: {}\n", config.getName());
-    Module module = walk(config.getName(), config.getName(), config,
-        new HashMap<ResourceURI, Module>());
+    // work on a read-only copy, so callers are free to change or share the config
+    Config snapshot = config.snapshot();
+    logger.debug("Tracing dependencies for: {}\n", snapshot.getName());
+    Module module = walk(snapshot.getName(), snapshot.getName(), snapshot,
+        new HashMap<ResourceURI, Module>(), new ResourceURI.Pool());
+    if (snapshot.isFailOnCycles()) {
+      List<List<Module>> cycles = new ModuleGraph(module).getCycles();
+      validState(cycles.isEmpty(), "Circular dependencies found in %s:\n%s", snapshot.getName(),
+          ModuleGraph.toString(cycles));
+    }
     return module;
   }
 
   /**
    * Merge all the dependencies into one single file, name anonymous modules and make AMD compatible
-   * whose script that has a shim entry in the configuration options.
+   * whose script that has a shim entry in the configuration options. The dependencies of nested
+   * <code>require</code> calls might be optimized into chunks, see
+   * {@link Config#setSplitNestedDependencies(boolean)}. Splitting the nested dependencies of a
+   * file output requires a bundles configuration, see {@link Config#setBundlesConfig(File)}.
    *
    * @param config The configuration options. Required.
    * @return The module graph.
    */
   public Module optimize(final Config config) {
-    Module module = analyze(config);
-    new Optimizer(config, transformers).walk(module);
+    notNull(config, "The config is required.");
+
+    Config snapshot = config.snapshot();
+    // without a bundles configuration, require.js never loads the chunks
+    isTrue(!snapshot.isSplitNestedDependencies() || snapshot.getOutFile() == null
+        || snapshot.getBundlesConfig() != null,
+        "The following option is required by splitNestedDependencies: %s", "bundlesConfig");
+    Module module = analyze(snapshot);
+    Minifier minifier = getMinifier(snapshot.getOptimizeName());
+    new Optimizer(snapshot, transformers, cache, minifier).walk(module);
+    if (snapshot.isSplitNestedDependencies() && snapshot.getOutFile() != null) {
+      List<Module> modules = module.getDependencies(true);
+      new Splitter(module, snapshot, minifier).split(new HashSet<Module>(modules), modules);
+    }
     return module;
   }
 
+  /**
+   * The file of a chunk: <code>&lt;out&gt;-&lt;n&gt;.js</code>.
+   *
+   * @param out The output's file.
+   * @param chunk The chunk's number.
+   * @return The file of a chunk.
+   */
+  private static File chunkFile(final File out, final int chunk) {
+    String path = out.getPath();
+    String extension = ".js";
+    if (path.endsWith(extension)) {
+      return new File(path.substring(0, path.length() - extension.length()) + "-" + chunk
+          + extension);
+    }
+    return new File(path + "-" + chunk);
+  }
+
   /**
    * Walk through a module and collect dependencies.
    *
@@ -161,10 +414,11 @@ public class Amd4j {
    * @param moduleName The module's name.
    * @param config The configuration options.
    * @param registry The already processed modules.
+   * @param pool The canonical resource locations of the build.
    * @return A module or null if the module should be skipped.
    */
   private Module walk(final String modulePath, final String moduleName, final Config config,
-      final Map<ResourceURI, Module> registry) {
+      final Map<ResourceURI, Module> registry, final ResourceURI.Pool pool) {
     try {
       String path = config.resolvePath(modulePath);
       if (Config.EMPTY.equals(path)) {
@@ -172,7 +426,7 @@ public class Amd4j {
         return null;
       }
 
-      ResourceURI uri = resolve(loader, ResourceURI.create(config.getBaseUrl(), path));
+      ResourceURI uri = resolve(loader, pool.create(config.getBaseUrl(), path), pool);
       Module existing = registry.get(uri);
       if (existing != null) {
         logger.debug("included already: {}", modulePath);
@@ -187,7 +441,7 @@ public class Amd4j {
       for (String unresolved : unresolvedDependencies) {
         String dependencyName = unresolved.replace(RELATIVE_EXPRESSION, getPath(moduleName));
         String dependencyPath = unresolved.replace(RELATIVE_EXPRESSION, getPath(path));
-        Module resolved = walk(dependencyPath, dependencyName, config, registry);
+        Module resolved = walk(dependencyPath, dependencyName, config, registry, pool);
         if (resolved != null) {
           module.add(resolved);
         }
@@ -211,15 +465,16 @@ public class Amd4j {
    *
    * @param loader The resource loader.
    * @param uri The candidate uri.
+   * @param pool The canonical resource locations of the build.
    * @return An existing uri for the candidate uri.
    * @throws IOException If the uri can't be resolved.
    */
-  private static ResourceURI resolve(final ResourceLoader loader, final ResourceURI uri)
-      throws IOException {
+  private static ResourceURI resolve(final ResourceLoader loader, final ResourceURI uri,
+      final ResourceURI.Pool pool) throws IOException {
     String path = uri.getPath();
     LinkedList<ResourceURI> candidates = new LinkedList<ResourceURI>();
     candidates.add(uri);
-    ResourceURI alternative = ResourceURI.create(uri.toString() + ".js");
+    ResourceURI alternative = pool.create(uri.toString() + ".js");
     if (isEmpty(getExtension(path))) {
       candidates.addFirst(alternative);
     } else {
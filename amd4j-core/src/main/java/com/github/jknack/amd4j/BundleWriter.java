@@ -0,0 +1,468 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+
+import com.github.jknack.amd4j.JsonParser.Event;
+
+/**
+ * Write an optimized module to {@link Config#getOut()} or {@link Config#getOutFile()}. If the
+ * output is a file, a <code>.gz</code> file, a <code>.map</code> source map and <code>.sha1</code>
+ * checksum files might be written next to it.
+ * All the outputs are written in a single pass, so the output's file is never read back. Each
+ * file is written to a temporary file that is renamed to its destination, and skipped if the
+ * destination already has the same content. The output's file might be named after its content
+ * (see {@link #HASH}) and recorded in a JSON manifest and a require.js <code>bundles</code>
+ * configuration.
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+final class BundleWriter {
+
+  /**
+   * A gzip stream that compress at the best level.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  private static class BestCompressionOutputStream extends GZIPOutputStream {
+
+    /**
+     * Creates a new {@link BestCompressionOutputStream}.
+     *
+     * @param out The output stream.
+     * @throws IOException If the gzip header can't be written.
+     */
+    public BestCompressionOutputStream(final OutputStream out) throws IOException {
+      super(out);
+      def.setLevel(Deflater.BEST_COMPRESSION);
+    }
+  }
+
+  /**
+   * The number of chars written per call.
+   */
+  private static final int CHUNK_SIZE = 8192;
+
+  /**
+   * The output's encoding.
+   */
+  private static final String ENCODING = "UTF-8";
+
+  /**
+   * The checksum's algorithm.
+   */
+  private static final String ALGORITHM = "SHA-1";
+
+  /**
+   * The placeholder of the output's file that is replaced by the hash of the optimized module.
+   */
+  static final String HASH = "${hash}";
+
+  /**
+   * The number of hexadecimal digits of the hash in the output's file.
+   */
+  private static final int HASH_LENGTH = 8;
+
+  /**
+   * Serialize the changes of manifests and require.js configurations.
+   */
+  private static final Object LOCK = new Object();
+
+  /**
+   * Not allowed.
+   */
+  private BundleWriter() {
+  }
+
+  /**
+   * Write the optimized module to the configured outputs. File outputs are written to a temporary
+   * file next to the destination and then renamed, so readers never see a truncated output.
+   * Destinations whose content didn't change aren't touched, so their last modified time is kept.
+   * A {@link #HASH} placeholder in the output's file is resolved from the optimized module, the
+   * hash is computed while the module is written.
+   *
+   * @param config The configuration options.
+   * @param content The optimized module.
+   * @param sourceMap The source map of the optimized module or null. A map without mappings
+   *        isn't written.
+   * @return The output's file (with placeholders resolved) or null if the output isn't a file.
+   * @throws IOException If the outputs can't be written.
+   */
+  public static File write(final Config config, final CharSequence content,
+      final SourceMap sourceMap) throws IOException {
+    File file = config.getOutFile();
+    if (file == null) {
+      Writer out = config.getOut();
+      if (out != null) {
+        append(Collections.singletonList(out), content);
+      }
+      return null;
+    }
+    boolean checksum = config.isChecksum();
+    boolean hashed = file.getPath().contains(HASH);
+    List<Writer> writers = new ArrayList<Writer>();
+    File tmp = null;
+    MessageDigest digest = digest();
+    DigestOutputStream hash = null;
+    File gzipTmp = null;
+    MessageDigest gzipDigest = null;
+    File mapFile = null;
+    try {
+      try {
+        tmp = tempFile(file);
+        OutputStream output = new DigestOutputStream(new FileOutputStream(tmp), digest);
+        if (hashed) {
+          // the hash of the name doesn't include the source map's footer, it has the name
+          hash = new DigestOutputStream(output, digest());
+          output = hash;
+        }
+        writers.add(new OutputStreamWriter(output, ENCODING));
+        if (config.isGzip()) {
+          gzipTmp = tempFile(file);
+          gzipDigest = digest();
+          writers.add(new OutputStreamWriter(new BestCompressionOutputStream(
+              new DigestOutputStream(new FileOutputStream(gzipTmp), gzipDigest)), ENCODING));
+        }
+        append(writers, content);
+        if (hash != null) {
+          hash.on(false);
+          String name = toHex(hash.getMessageDigest().digest()).substring(0, HASH_LENGTH);
+          file = new File(file.getPath().replace(HASH, name));
+        }
+        if (sourceMap != null && !sourceMap.isEmpty()) {
+          mapFile = new File(file.getPath() + ".map");
+          append(writers, "\n//# sourceMappingURL=" + mapFile.getName());
+        }
+        // closing writes the gzip trailer: a failure must stop the commit of a truncated file
+        for (Writer writer : writers) {
+          writer.close();
+        }
+      } finally {
+        // error path only, closing a closed writer does nothing
+        for (Writer writer : writers) {
+          IOUtils.closeQuietly(writer);
+        }
+      }
+      if (mapFile != null) {
+        write(mapFile, sourceMap.toJson(file.getName()), checksum);
+      }
+      commit(tmp, file, digest.digest(), checksum);
+      if (gzipTmp != null) {
+        commit(gzipTmp, new File(file.getPath() + ".gz"), gzipDigest.digest(), checksum);
+      }
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+      FileUtils.deleteQuietly(gzipTmp);
+    }
+    if (config.getManifest() != null) {
+      manifest(config.getManifest(), config.getName(), file);
+    }
+    return file;
+  }
+
+  /**
+   * Append the content to all the writers in a single pass.
+   *
+   * @param writers The writers.
+   * @param content The content.
+   * @throws IOException If the content can't be written.
+   */
+  private static void append(final List<Writer> writers, final CharSequence content)
+      throws IOException {
+    int length = content.length();
+    for (int start = 0; start < length; start += CHUNK_SIZE) {
+      int end = Math.min(length, start + CHUNK_SIZE);
+      for (Writer writer : writers) {
+        writer.append(content, start, end);
+      }
+    }
+    for (Writer writer : writers) {
+      writer.flush();
+    }
+  }
+
+  /**
+   * Add or replace the entry of a module in a JSON manifest. Other entries are kept, the manifest
+   * is updated under a lock, so concurrent optimizations in this JVM can share a manifest.
+   *
+   * @param manifest The manifest's file.
+   * @param name The module's name.
+   * @param file The output's file.
+   * @throws IOException If the manifest can't be read or written.
+   */
+  static void manifest(final File manifest, final String name, final File file)
+      throws IOException {
+    String path = relativize(manifest, file);
+    synchronized (LOCK) {
+      Map<String, String> entries = new TreeMap<String, String>();
+      if (manifest.exists()) {
+        JsonParser parser = JsonParser.create(FileUtils.readFileToString(manifest, ENCODING),
+            manifest.getPath());
+        if (parser.next() == Event.START_OBJECT) {
+          while (parser.next() == Event.FIELD_NAME) {
+            String entry = parser.getText();
+            parser.next();
+            entries.put(entry, parser.getString());
+          }
+        }
+      }
+      entries.put(name, path);
+      StringBuilder json = new StringBuilder("{");
+      String sep = "\n";
+      for (Entry<String, String> entry : entries.entrySet()) {
+        json.append(sep).append("  ");
+        SourceMap.quote(json, entry.getKey());
+        json.append(": ");
+        SourceMap.quote(json, entry.getValue());
+        sep = ",\n";
+      }
+      json.append("\n}\n");
+      write(manifest, json.toString(), false);
+    }
+  }
+
+  /**
+   * Add or replace a bundle in a require.js <code>bundles</code> configuration. Other bundles are
+   * kept, except for the old versions of the same output (a different {@link #HASH}). The
+   * configuration is updated under a lock, so concurrent optimizations in this JVM can share it.
+   *
+   * @param bundlesConfig The require.js configuration's file.
+   * @param template The output's file, placeholders aren't resolved.
+   * @param file The output's file.
+   * @param modules The ids of the modules in the output.
+   * @throws IOException If the configuration can't be read or written.
+   */
+  static void bundles(final File bundlesConfig, final File template, final File file,
+      final Collection<String> modules) throws IOException {
+    String id = bundleId(bundlesConfig, file);
+    StringBuilder regex = new StringBuilder();
+    String[] segments = bundleId(bundlesConfig, template).split(Pattern.quote(HASH), -1);
+    for (int i = 0; i < segments.length; i++) {
+      if (i > 0) {
+        regex.append("[0-9a-f]{").append(HASH_LENGTH).append("}");
+      }
+      regex.append(Pattern.quote(segments[i]));
+    }
+    Pattern versions = Pattern.compile(regex.toString());
+    synchronized (LOCK) {
+      Map<String, Object> bundles = new TreeMap<String, Object>();
+      if (bundlesConfig.exists()) {
+        Object existing = JsonParser.parseLiteral(
+            FileUtils.readFileToString(bundlesConfig, ENCODING), bundlesConfig.getPath())
+            .get("bundles");
+        if (existing instanceof Map) {
+          for (Entry<?, ?> bundle : ((Map<?, ?>) existing).entrySet()) {
+            String key = (String) bundle.getKey();
+            if (bundle.getValue() instanceof List && !versions.matcher(key).matches()) {
+              bundles.put(key, bundle.getValue());
+            }
+          }
+        }
+      }
+      bundles.put(id, modules);
+      StringBuilder js = new StringBuilder("requirejs.config({\n  \"bundles\": {");
+      String sep = "\n";
+      for (Entry<String, Object> bundle : bundles.entrySet()) {
+        js.append(sep).append("    ");
+        SourceMap.quote(js, bundle.getKey());
+        js.append(": [");
+        String idSep = "";
+        for (Object module : (Collection<?>) bundle.getValue()) {
+          js.append(idSep);
+          SourceMap.quote(js, module.toString());
+          idSep = ", ";
+        }
+        js.append("]");
+        sep = ",\n";
+      }
+      js.append("\n  }\n});\n");
+      write(bundlesConfig, js.toString(), false);
+    }
+  }
+
+  /**
+   * The require.js id of an output's file: the path relative to the require.js configuration
+   * without the <code>.js</code> extension.
+   *
+   * @param bundlesConfig The require.js configuration's file.
+   * @param file The output's file.
+   * @return The require.js id of the output's file.
+   */
+  private static String bundleId(final File bundlesConfig, final File file) {
+    String id = relativize(bundlesConfig, file);
+    return id.endsWith(".js") ? id.substring(0, id.length() - ".js".length()) : id;
+  }
+
+  /**
+   * Find the path of a file relative to the directory of another file.
+   *
+   * @param base A file, the path is relative to its directory.
+   * @param file The file.
+   * @return The relative path (using <code>/</code> as separator) or the absolute path if the file
+   *         isn't inside the directory.
+   */
+  private static String relativize(final File base, final File file) {
+    String path = file.getAbsolutePath();
+    String dir = base.getAbsoluteFile().getParent() + File.separator;
+    if (path.startsWith(dir)) {
+      return path.substring(dir.length()).replace(File.separatorChar, '/');
+    }
+    return path;
+  }
+
+  /**
+   * Write a text file, and optionally its <code>.sha1</code> checksum file, if the content
+   * changed.
+   *
+   * @param file The destination file.
+   * @param text The file's content.
+   * @param checksum True, if a checksum file should be written too.
+   * @throws IOException If the file can't be written.
+   */
+  private static void write(final File file, final String text, final boolean checksum)
+      throws IOException {
+    byte[] bytes = text.getBytes(ENCODING);
+    File tmp = tempFile(file);
+    try {
+      FileUtils.writeByteArrayToFile(tmp, bytes);
+      commit(tmp, file, digest().digest(bytes), checksum);
+    } finally {
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  /**
+   * Move a fully written temporary file to its destination, unless the destination already has
+   * the same content.
+   *
+   * @param tmp The temporary file.
+   * @param file The destination file.
+   * @param hash The checksum of the temporary file.
+   * @param checksum True, if a <code>.sha1</code> checksum file should be written too.
+   * @throws IOException If the file can't be moved.
+   */
+  private static void commit(final File tmp, final File file, final byte[] hash,
+      final boolean checksum) throws IOException {
+    if (!sameContent(file, tmp.length(), hash)) {
+      if (!tmp.renameTo(file)) {
+        // some platforms don't replace an existing file on rename
+        FileUtils.deleteQuietly(file);
+        if (!tmp.renameTo(file)) {
+          throw new IOException("Can't rename " + tmp + " to " + file);
+        }
+      }
+    }
+    if (checksum) {
+      write(new File(file.getPath() + ".sha1"), toHex(hash) + "  " + file.getName() + "\n",
+          false);
+    }
+  }
+
+  /**
+   * Check if the file exists and its content has the given length and checksum.
+   *
+   * @param file The file.
+   * @param length The expected length.
+   * @param hash The expected checksum.
+   * @return True, if the file has the expected content.
+   * @throws IOException If the file can't be read.
+   */
+  private static boolean sameContent(final File file, final long length, final byte[] hash)
+      throws IOException {
+    if (!file.isFile() || file.length() != length) {
+      return false;
+    }
+    MessageDigest digest = digest();
+    InputStream input = new DigestInputStream(new FileInputStream(file), digest);
+    try {
+      IOUtils.copy(input, new NullOutputStream());
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+    return Arrays.equals(hash, digest.digest());
+  }
+
+  /**
+   * Creates a temporary file in the directory of the given file, so it can be renamed to it.
+   *
+   * @param file The destination file.
+   * @return A new temporary file.
+   * @throws IOException If the file can't be created.
+   */
+  private static File tempFile(final File file) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    FileUtils.forceMkdir(dir);
+    return File.createTempFile("." + file.getName() + ".", ".tmp", dir);
+  }
+
+  /**
+   * Creates a new checksum's digest.
+   *
+   * @return A new checksum's digest.
+   */
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ALGORITHM + " isn't available", ex);
+    }
+  }
+
+  /**
+   * Convert bytes to an hexadecimal string.
+   *
+   * @param bytes The bytes.
+   * @return An hexadecimal string.
+   */
+  static String toHex(final byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return hex.toString();
+  }
+}
@@ -20,34 +20,26 @@ package com.github.jknack.amd4j;
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.Validate.notEmpty;
 import static org.apache.commons.lang3.Validate.notNull;
+import static org.apache.commons.lang3.Validate.validState;
 
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.Writer;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
-import org.mozilla.javascript.Parser;
-import org.mozilla.javascript.Token;
-import org.mozilla.javascript.ast.ArrayLiteral;
-import org.mozilla.javascript.ast.AstNode;
-import org.mozilla.javascript.ast.AstRoot;
-import org.mozilla.javascript.ast.FunctionNode;
-import org.mozilla.javascript.ast.Name;
-import org.mozilla.javascript.ast.NodeVisitor;
-import org.mozilla.javascript.ast.ObjectLiteral;
-import org.mozilla.javascript.ast.ObjectProperty;
-import org.mozilla.javascript.ast.StringLiteral;
+
+import com.github.jknack.amd4j.JsonParser.Event;
+import com.github.jknack.amd4j.JsonParser.JsonParseException;
 
 /**
  * Optimizer configuration options.
@@ -57,122 +49,6 @@ import org.mozilla.javascript.ast.StringLiteral;
  */
 public class Config {
 
-  /**
-   * Transform JavaScript object literals to a fully JSON object.
-   * Function statements are converted to a string literal.
-   *
-   * @author edgar.espina
-   * @since 0.1.0
-   */
-  private static class JsonNormalizer implements NodeVisitor {
-
-    /**
-     * The AST root.
-     */
-    private AstNode node;
-
-    /**
-     * Convert a JavaScript object literal to a JSON object.
-     *
-     * @param jsObjectLiteral The object literal.
-     * @param path The source path.
-     * @return A Json object.
-     */
-    public static String toJson(final String jsObjectLiteral, final String path) {
-      AstRoot tree = new Parser().parse(jsObjectLiteral, path, 1);
-      JsonNormalizer normalizer = new JsonNormalizer();
-      tree.visit(normalizer);
-      return normalizer.node.toSource();
-    }
-
-    @Override
-    public boolean visit(final AstNode node) {
-      if (node.getType() == Token.OBJECTLIT) {
-        if (this.node == null) {
-          this.node = node;
-        }
-      }
-      if (this.node != null) {
-        if (node instanceof ObjectProperty) {
-          visit((ObjectProperty) node);
-        } else if (node instanceof StringLiteral) {
-          visit((StringLiteral) node);
-        }
-      }
-      return true;
-    }
-
-    /**
-     * Make sure string literal has double quotes.
-     *
-     * @param node The string literal node.
-     */
-    protected void visit(final StringLiteral node) {
-      if (node.getQuoteCharacter() == '\'') {
-        node.setQuoteCharacter('"');
-      }
-    }
-
-    /**
-     * Modify an object literal property. This method make sure that:
-     * 1. property names are double quote string literal
-     * 2. function values are converted to a double quote string literal
-     * 3. transform short array literal dependencies into long object literal dependencies.
-     *
-     * @param node Object literal property.
-     */
-    protected void visit(final ObjectProperty node) {
-      AstNode name = node.getLeft();
-      // name
-      StringLiteral propertyName = new StringLiteral();
-      propertyName.setQuoteCharacter('"');
-      if (name instanceof Name) {
-        propertyName.setValue(((Name) name).getIdentifier());
-      } else {
-        propertyName.setValue(((StringLiteral) name).getValue());
-      }
-      node.setLeft(propertyName);
-      // value
-      AstNode value = node.getRight();
-      AstNode newValue = value;
-      if (value instanceof FunctionNode) {
-        StringLiteral literal = new StringLiteral();
-        literal.setQuoteCharacter('"');
-        literal.setValue(value.toSource());
-        newValue = literal;
-      } else if (value instanceof StringLiteral) {
-        StringLiteral literal = new StringLiteral();
-        literal.setQuoteCharacter('"');
-        literal.setValue(((StringLiteral) value).getValue());
-        newValue = literal;
-      } else if (value instanceof ArrayLiteral && node.depth() == 6) {
-        // we only want to rewrite shim
-        String parentProperty = ((StringLiteral) ((ObjectProperty) node.getParent().getParent())
-            .getLeft()).getValue();
-        if (!parentProperty.equals("shim")) {
-          return;
-        }
-        // handle shortcut syntax where plugins don't exports anything
-        ArrayLiteral array = (ArrayLiteral) value;
-        ObjectLiteral object = new ObjectLiteral();
-
-        // convert array dependencies to a shim object literal.
-        ObjectProperty deps = new ObjectProperty();
-        StringLiteral depsProperty = new StringLiteral();
-        depsProperty.setQuoteCharacter('"');
-        depsProperty.setValue("deps");
-        deps.setLeft(depsProperty);
-        deps.setRight(array);
-        object.addElement(deps);
-        newValue = object;
-      }
-      if (value != newValue) {
-        node.setRight(newValue);
-      }
-    }
-
-  }
-
   /**
    * Mark a module as "provided", so it wont be included in the final output.
    */
@@ -197,6 +73,11 @@ public class Config {
    */
   private Map<String, Object> paths;
 
+  /**
+   * The paths by segment, for longest prefix resolution. Created on demand.
+   */
+  private transient PathTrie pathTrie;
+
   /**
    * Configure the dependencies and exports for older, traditional "browser globals" scripts that do
    * not use <code>define</code> to declare the dependencies and set a module value.
@@ -224,6 +105,11 @@ public class Config {
    */
   private boolean findNestedDependencies = false;
 
+  /**
+   * Optimize the dependencies of nested <code>require()</code> calls into lazy loaded chunks.
+   */
+  private boolean splitNestedDependencies = false;
+
   /**
    * The module to be optimized.
    */
@@ -240,6 +126,52 @@ public class Config {
    */
   private Writer out;
 
+  /**
+   * The output's file or <code>null</code> if the output isn't a file.
+   */
+  private File outFile;
+
+  /**
+   * Write a <code>.gz</code> file next to the output's file.
+   */
+  private boolean gzip = false;
+
+  /**
+   * Write a <code>.sha1</code> checksum file next to each output's file.
+   */
+  private boolean checksum = false;
+
+  /**
+   * Write a <code>.map</code> source map file next to the output's file.
+   */
+  private boolean generateSourceMaps = false;
+
+  /**
+   * Fail the analysis if the module graph has circular dependencies.
+   */
+  private boolean failOnCycles = false;
+
+  /**
+   * A JSON file mapping module names to the (content-hashed) output's files or <code>null</code>.
+   */
+  private File manifest;
+
+  /**
+   * A JavaScript file with the require.js <code>bundles</code> configuration or <code>null</code>.
+   */
+  private File bundlesConfig;
+
+  /**
+   * True, if {@link #paths} and {@link #shimConfig} are shared with another configuration object,
+   * so they must be copied before a change.
+   */
+  private transient boolean shared;
+
+  /**
+   * True, for read-only snapshots. See {@link #snapshot()}.
+   */
+  private transient boolean frozen;
+
   {
     initialize();
   }
@@ -248,6 +180,7 @@ public class Config {
    * Initialize default values.
    */
   void initialize() {
+    unshare();
     if (shimConfig == null) {
       shimConfig = new LinkedHashMap<String, Shim>();
     }
@@ -256,6 +189,7 @@ public class Config {
     }
     paths.put("module", EMPTY);
     paths.put("require", EMPTY);
+    pathTrie = null;
   }
 
   /**
@@ -313,54 +247,200 @@ public class Config {
   }
 
   /**
-   * Creates a new {@link Config} from a JSON object.
+   * Creates a copy of a {@link Config} object. The paths and shim options are shared (they are
+   * copied on the first change of any of the two objects), so copies are cheap even for large
+   * build files. The copy of a snapshot is writable.
+   *
+   * @param config The configuration to copy. Required.
+   */
+  public Config(final Config config) {
+    notNull(config, "The config is required.");
+    baseUrl = config.baseUrl;
+    paths = config.paths;
+    pathTrie = config.pathTrie;
+    shimConfig = config.shimConfig;
+    shared = true;
+    if (!config.frozen) {
+      // snapshots are never modified, no need to mark them (it might be read by other threads)
+      config.shared = true;
+    }
+    useStrict = config.useStrict;
+    inlineText = config.inlineText;
+    findNestedDependencies = config.findNestedDependencies;
+    splitNestedDependencies = config.splitNestedDependencies;
+    name = config.name;
+    optimize = config.optimize;
+    out = config.out;
+    outFile = config.outFile;
+    gzip = config.gzip;
+    checksum = config.checksum;
+    generateSourceMaps = config.generateSourceMaps;
+    failOnCycles = config.failOnCycles;
+    manifest = config.manifest;
+    bundlesConfig = config.bundlesConfig;
+  }
+
+  /**
+   * Creates a read-only copy of this configuration object. Paths and shim options are copied into
+   * unmodifiable maps and the path lookup structure is created ahead of time, so a snapshot is
+   * never modified: it can be shared by concurrent analyses or optimizations once it has been
+   * published (like via an executor or a concurrent collection). The setters of a snapshot throw
+   * an {@link IllegalStateException}; use {@link #Config(Config)} to get a writable copy.
    *
-   * @param json The json object.
-   * @throws IOException If the out attribute can't be set.
+   * @return A read-only copy of this configuration object or this object if it is a snapshot
+   *         already.
    */
-  @SuppressWarnings("unchecked")
-  private Config(final Map<String, Object> json) throws IOException {
-    this.baseUrl = (String) json.get("baseUrl");
-
-    // find nested dependencies
-    Boolean findNestedDependencies = (Boolean) json.get("findNestedDependencies");
-    this.findNestedDependencies = findNestedDependencies == null ? false : findNestedDependencies;
+  public Config snapshot() {
+    if (frozen) {
+      return this;
+    }
+    Config snapshot = new Config(this);
+    snapshot.paths = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(paths));
+    snapshot.shimConfig = Collections.unmodifiableMap(new LinkedHashMap<String, Shim>(shimConfig));
+    snapshot.pathTrie = new PathTrie(snapshot.paths);
+    snapshot.shared = false;
+    snapshot.frozen = true;
+    return snapshot;
+  }
 
-    // inlineText
-    Boolean inlineText = (Boolean) json.get("inlineText");
-    this.inlineText = inlineText == null ? true : inlineText;
+  /**
+   * True, if this is a read-only snapshot. See {@link #snapshot()}.
+   *
+   * @return True, if this is a read-only snapshot.
+   */
+  public boolean isSnapshot() {
+    return frozen;
+  }
 
-    // name
-    this.name = (String) json.get("name");
+  /**
+   * Fail if this is a read-only snapshot.
+   */
+  private void checkWritable() {
+    validState(!frozen, "The configuration is a read-only snapshot: %s", name);
+  }
 
-    // optimize
-    optimize = (String) json.get("optimize");
-    this.optimize = optimize == null ? "none" : optimize;
+  /**
+   * Copy the paths and shim options if they are shared with another configuration object.
+   */
+  private void unshare() {
+    if (shared) {
+      paths = new LinkedHashMap<String, Object>(paths);
+      shimConfig = new LinkedHashMap<String, Shim>(shimConfig);
+      shared = false;
+    }
+  }
 
-    // out
-    String out = (String) json.get("out");
-    if (out != null) {
-      this.out = new FileWriter(out);
+  /**
+   * Creates a new {@link Config} from the events of a build file. Unknown options are skipped
+   * without building them.
+   *
+   * @param parser The build file parser.
+   * @return A new {@link Config} object.
+   * @throws IOException If the build file is invalid or the out attribute can't be set.
+   */
+  private static Config read(final JsonParser parser) throws IOException {
+    Config config = new Config();
+    parser.next();
+    while (parser.next() == Event.FIELD_NAME) {
+      String option = parser.getText();
+      if (parser.next() == Event.VALUE_NULL) {
+        continue;
+      }
+      if (option.equals("baseUrl")) {
+        config.baseUrl = parser.getString();
+      } else if (option.equals("findNestedDependencies")) {
+        config.findNestedDependencies = parser.getBoolean();
+      } else if (option.equals("splitNestedDependencies")) {
+        config.splitNestedDependencies = parser.getBoolean();
+      } else if (option.equals("inlineText")) {
+        config.inlineText = parser.getBoolean();
+      } else if (option.equals("name")) {
+        config.name = parser.getString();
+      } else if (option.equals("optimize")) {
+        config.optimize = parser.getString();
+      } else if (option.equals("out")) {
+        config.setOut(new File(parser.getString()));
+      } else if (option.equals("gzip")) {
+        config.gzip = parser.getBoolean();
+      } else if (option.equals("checksum")) {
+        config.checksum = parser.getBoolean();
+      } else if (option.equals("generateSourceMaps")) {
+        config.generateSourceMaps = parser.getBoolean();
+      } else if (option.equals("failOnCycles")) {
+        config.failOnCycles = parser.getBoolean();
+      } else if (option.equals("manifest")) {
+        config.manifest = new File(parser.getString());
+      } else if (option.equals("bundlesConfig")) {
+        config.bundlesConfig = new File(parser.getString());
+      } else if (option.equals("paths") && parser.getEvent() == Event.START_OBJECT) {
+        while (parser.next() == Event.FIELD_NAME) {
+          String path = parser.getText();
+          parser.next();
+          config.paths.put(path, parser.getEvent() == Event.START_ARRAY
+              ? readStrings(parser)
+              : parser.getString());
+        }
+      } else if (option.equals("shim") && parser.getEvent() == Event.START_OBJECT) {
+        while (parser.next() == Event.FIELD_NAME) {
+          String module = parser.getText();
+          config.shimConfig.put(module, readShim(module, parser));
+        }
+      } else {
+        parser.skipChildren();
+      }
     }
+    return config;
+  }
 
-    // paths
-    this.paths = (Map<String, Object>) json.get("paths");
-
-    // shim
-    Map<String, Map<String, Object>> shimConfig = (Map<String, Map<String, Object>>) json
-        .get("shim");
-    if (shimConfig != null) {
-      this.shimConfig = new LinkedHashMap<String, Shim>();
-      for (Entry<String, Map<String, Object>> shimEntry : shimConfig.entrySet()) {
-        Map<String, Object> shimValue = shimEntry.getValue();
-        Shim shim = new Shim()
-            .setExports((String) shimValue.get("exports"))
-            .setInit((String) shimValue.get("init"))
-            .setDeps((Collection<String>) shimValue.get("deps"));
-
-        this.shimConfig.put(shimEntry.getKey(), shim);
+  /**
+   * Read a shim option: an object or an array of dependencies (shortcut syntax).
+   *
+   * @param module The shimmed module.
+   * @param parser The build file parser.
+   * @return A new shim.
+   * @throws IOException If the shim option is invalid.
+   */
+  private static Shim readShim(final String module, final JsonParser parser)
+      throws IOException {
+    Shim shim = new Shim();
+    Event event = parser.next();
+    if (event == Event.START_ARRAY) {
+      return shim.setDeps(readStrings(parser));
+    }
+    if (event != Event.START_OBJECT) {
+      throw new JsonParseException("Invalid shim for '" + module
+          + "', expected: an object or an array, found: '" + parser.getText() + "'");
+    }
+    List<String> deps = null;
+    while (parser.next() == Event.FIELD_NAME) {
+      String option = parser.getText();
+      parser.next();
+      if (option.equals("deps") && parser.getEvent() == Event.START_ARRAY) {
+        deps = readStrings(parser);
+      } else if (option.equals("exports")) {
+        shim.setExports(parser.getString());
+      } else if (option.equals("init")) {
+        shim.setInit(parser.getString());
+      } else {
+        parser.skipChildren();
       }
     }
+    return shim.setDeps(deps);
+  }
+
+  /**
+   * Read an array of strings.
+   *
+   * @param parser The build file parser.
+   * @return The array's strings.
+   * @throws IOException If the array has a non-string value.
+   */
+  private static List<String> readStrings(final JsonParser parser) throws IOException {
+    List<String> strings = new ArrayList<String>();
+    while (parser.next() != Event.END_ARRAY) {
+      strings.add(parser.getString());
+    }
+    return strings;
   }
 
   /**
@@ -414,13 +494,8 @@ public class Config {
     try {
       notNull(reader, "The input is required.");
       notEmpty(path, "The path is required.");
-      String javaScript = IOUtils.toString(reader).trim();
-      if (javaScript.startsWith("{") && javaScript.endsWith("}")) {
-        javaScript = "(" + javaScript + ")";
-      }
-      String json = JsonNormalizer.toJson(javaScript, path);
-      @SuppressWarnings("unchecked")
-      Config config = new Config((Map<String, Object>) JsonParser.parse(json, path));
+      String javaScript = IOUtils.toString(reader);
+      Config config = read(JsonParser.createLiteral(javaScript, path));
       config.initialize();
       return config;
     } finally {
@@ -429,7 +504,15 @@ public class Config {
   }
 
   /**
-   * Resolve an alias to an absolute path.
+   * Resolve an alias to an absolute path. Like r.js, the longest path that is a prefix of the
+   * module's id is used, so <code>vendor/foo/bar</code> is resolved by <code>vendor</code> to
+   * <code>lib/vendor/foo/bar</code> if there is a <code>vendor: 'lib/vendor'</code> path.
+   * <p>
+   * The plugin's prefix (if any) is kept, so <code>text!foo</code> is resolved by a
+   * <code>foo: 'bar'</code> path to <code>text!bar</code> and not to <code>bar</code>: the prefix
+   * is what {@link ResourceURI} uses to pick the plugin's loader. Previous versions dropped it and
+   * the resource was loaded as a plain script.
+   * </p>
    *
    * @param path The path's alias. Required.
    * @return An absolute path if any or the given path alias.
@@ -437,14 +520,29 @@ public class Config {
   public String resolvePath(final String path) {
     notEmpty(path, "The path is required.");
 
-    Object value = paths.get(path.substring(path.indexOf("!") + 1));
-    if (value instanceof List) {
+    int bang = path.indexOf('!');
+    String id = path.substring(bang + 1);
+    PathTrie trie = pathTrie;
+    if (trie == null) {
+      trie = new PathTrie(paths);
+      pathTrie = trie;
+    }
+    PathTrie.Match match = trie.match(id);
+    if (match == null) {
+      return path;
+    }
+    if (match.value instanceof List) {
       // Path fall back
       return EMPTY;
-    } else if (isEmpty((String) value)) {
-      value = path;
     }
-    return (String) value;
+    String value = (String) match.value;
+    if (isEmpty(value)) {
+      return path;
+    }
+    if (value.startsWith(EMPTY)) {
+      return EMPTY;
+    }
+    return path.substring(0, bang + 1) + value + id.substring(match.end);
   }
 
   /**
@@ -480,14 +578,167 @@ public class Config {
   }
 
   /**
-   * The output of the optimized file.
+   * The writer of the optimized file.
    *
-   * @return The output of the optimized file.
+   * @return The writer of the optimized file or <code>null</code> if the output is a file (see
+   *         {@link #getOutFile()}) or there is no output.
    */
   public Writer getOut() {
     return out;
   }
 
+  /**
+   * The output's file.
+   *
+   * @return The output's file or <code>null</code> if the output isn't a file.
+   */
+  public File getOutFile() {
+    return outFile;
+  }
+
+  /**
+   * True, if a <code>.gz</code> file should be written next to the output's file.
+   *
+   * @return True, if a <code>.gz</code> file should be written next to the output's file.
+   */
+  public boolean isGzip() {
+    return gzip;
+  }
+
+  /**
+   * Write a <code>.gz</code> file (compressed at the best level) next to the output's file, so
+   * static servers can serve pre-compressed bundles. It only applies if the output is a file.
+   *
+   * @param gzip True, to write a <code>.gz</code> file.
+   * @return This configuration object.
+   */
+  public Config setGzip(final boolean gzip) {
+    checkWritable();
+    this.gzip = gzip;
+    return this;
+  }
+
+  /**
+   * True, if a <code>.sha1</code> checksum file should be written next to each output's file.
+   *
+   * @return True, if a <code>.sha1</code> checksum file should be written.
+   */
+  public boolean isChecksum() {
+    return checksum;
+  }
+
+  /**
+   * Write a <code>.sha1</code> checksum file next to each output's file. It only applies if the
+   * output is a file.
+   *
+   * @param checksum True, to write checksum files.
+   * @return This configuration object.
+   */
+  public Config setChecksum(final boolean checksum) {
+    checkWritable();
+    this.checksum = checksum;
+    return this;
+  }
+
+  /**
+   * True, if a <code>.map</code> source map file should be written next to the output's file.
+   *
+   * @return True, if a <code>.map</code> source map file should be written.
+   */
+  public boolean isGenerateSourceMaps() {
+    return generateSourceMaps;
+  }
+
+  /**
+   * Write a <code>.map</code> source map file next to the output's file and append a
+   * <code>sourceMappingURL</code> comment to the output. Original sources are embedded in the
+   * source map. It only applies if the output is a file.
+   *
+   * @param generateSourceMaps True, to write a source map file.
+   * @return This configuration object.
+   */
+  public Config setGenerateSourceMaps(final boolean generateSourceMaps) {
+    checkWritable();
+    this.generateSourceMaps = generateSourceMaps;
+    return this;
+  }
+
+  /**
+   * True, if the analysis fails when the module graph has circular dependencies.
+   *
+   * @return True, if the analysis fails when the module graph has circular dependencies.
+   */
+  public boolean isFailOnCycles() {
+    return failOnCycles;
+  }
+
+  /**
+   * Fail the analysis if the module graph has circular dependencies. Default is false, because
+   * AMD loaders are able to resolve (some) circular dependencies at runtime.
+   *
+   * @param failOnCycles True, to fail on circular dependencies.
+   * @return This configuration object.
+   */
+  public Config setFailOnCycles(final boolean failOnCycles) {
+    checkWritable();
+    this.failOnCycles = failOnCycles;
+    return this;
+  }
+
+  /**
+   * The manifest's file.
+   *
+   * @return The manifest's file or <code>null</code> if no manifest should be written.
+   */
+  public File getManifest() {
+    return manifest;
+  }
+
+  /**
+   * Record the output's file in a JSON manifest, as <code>"name": "path"</code>. The path is
+   * relative to the manifest's directory (if the output is inside of it) and it is useful when the
+   * output's file has a <code>${hash}</code> placeholder. Existing entries of other modules are
+   * kept, so several optimizations can share the same manifest. It only applies if the output is a
+   * file.
+   *
+   * @param manifest The manifest's file or <code>null</code> to don't write a manifest.
+   * @return This configuration object.
+   */
+  public Config setManifest(final File manifest) {
+    checkWritable();
+    this.manifest = manifest;
+    return this;
+  }
+
+  /**
+   * The file with the require.js <code>bundles</code> configuration.
+   *
+   * @return The file with the require.js <code>bundles</code> configuration or <code>null</code>
+   *         if it shouldn't be written.
+   */
+  public File getBundlesConfig() {
+    return bundlesConfig;
+  }
+
+  /**
+   * Record the modules of the output in a require.js <code>bundles</code> configuration, like:
+   * <code>requirejs.config({"bundles": {"bundle": ["name", "dependency"]}});</code>, so the
+   * browser loads the output the first time one of its modules is required. The bundle's id is
+   * the path of the output's file without the <code>.js</code> extension, relative to the
+   * configuration's directory (so, the file should be saved in the <code>baseUrl</code> of the
+   * application). The bundles of other modules are kept, so several optimizations can share the
+   * same file. It only applies if the output is a file.
+   *
+   * @param bundlesConfig The require.js configuration's file or <code>null</code> to don't write
+   *        it.
+   * @return This configuration object.
+   */
+  public Config setBundlesConfig(final File bundlesConfig) {
+    checkWritable();
+    this.bundlesConfig = bundlesConfig;
+    return this;
+  }
+
   /**
    * Finds <code>require()</code> dependencies inside a <code>require()</code> or
    * <code>define</code> call. By default this value is false, because those resources should be
@@ -529,6 +780,7 @@ public class Config {
    * @return This configuration object.
    */
   public Config setInlineText(final boolean inlineText) {
+    checkWritable();
     this.inlineText = inlineText;
     return this;
   }
@@ -542,10 +794,40 @@ public class Config {
    * @return This configuration object.
    */
   public Config setFindNestedDependencies(final boolean findNestedDependencies) {
+    checkWritable();
     this.findNestedDependencies = findNestedDependencies;
     return this;
   }
 
+  /**
+   * True, if the dependencies of nested <code>require()</code> calls are optimized into lazy
+   * loaded chunks.
+   *
+   * @return True, if the dependencies of nested <code>require()</code> calls are optimized into
+   *         lazy loaded chunks.
+   */
+  public boolean isSplitNestedDependencies() {
+    return splitNestedDependencies;
+  }
+
+  /**
+   * Optimize the dependencies of each nested <code>require()</code> call (a split point) into a
+   * chunk: <code>&lt;out&gt;-&lt;n&gt;.js</code>. A chunk doesn't have the modules of the output
+   * (or the chunk) that loads it. Nested calls aren't part of the output, even if
+   * {@link #isFindNestedDependencies()} is on. It only applies if the output is a file and it
+   * requires a {@link #setBundlesConfig(File)}: the bundles configuration is what tells require.js
+   * to load a chunk (instead of one request per module) when a nested call runs.
+   *
+   * @param splitNestedDependencies True, to optimize nested <code>require()</code> calls into
+   *        lazy loaded chunks.
+   * @return This configuration object.
+   */
+  public Config setSplitNestedDependencies(final boolean splitNestedDependencies) {
+    checkWritable();
+    this.splitNestedDependencies = splitNestedDependencies;
+    return this;
+  }
+
   /**
    * Configure the dependencies and exports for older, traditional "browser globals" scripts that do
    * not use <code>define</code> to declare the dependencies and set a module value.
@@ -555,9 +837,11 @@ public class Config {
    * @return This configuration object.
    */
   public Config shim(final String name, final Shim shim) {
+    checkWritable();
     notEmpty(name, "The name is required.");
     notNull(shim, "The shim is required.");
 
+    unshare();
     this.shimConfig.put(name, shim);
     return this;
   }
@@ -572,6 +856,7 @@ public class Config {
    * @return This configuration object.
    */
   public Config setUseStrict(final boolean useStrict) {
+    checkWritable();
     this.useStrict = useStrict;
     return this;
   }
@@ -588,6 +873,7 @@ public class Config {
    * @return This configuration.
    */
   public Config setName(final String name) {
+    checkWritable();
     this.name = notEmpty(name, "The module's name is required.");
     return this;
   }
@@ -599,12 +885,23 @@ public class Config {
    * @return This configuration.
    */
   public Config setOptimize(final String optimize) {
+    checkWritable();
     this.optimize = notEmpty(optimize, "The optimize is required.");
     return this;
   }
 
   /**
-   * The minifier/optimizer.
+   * The name of the minifier/optimizer.
+   *
+   * @return The name of the minifier/optimizer.
+   */
+  String getOptimizeName() {
+    return optimize;
+  }
+
+  /**
+   * The minifier/optimizer. Only built-in (or globally registered) minifiers are resolved, see
+   * {@link Amd4j#getMinifier(String)} for minifiers registered in an {@link Amd4j} instance.
    *
    * @return The minifier/optimizer.
    */
@@ -613,15 +910,20 @@ public class Config {
   }
 
   /**
-   * The output of the optimized file.
+   * The output of the optimized file. This is just the destination: the file is created (or
+   * truncated) when the optimized module is written. A <code>${hash}</code> placeholder in the
+   * file's path is replaced by a prefix of the SHA-1 of the optimized module, so the name changes
+   * only when the content does.
    *
    * @param out The output of the optimized file.
    * @return This configuration object.
-   * @throws IOException If file handler can't be obtain.
+   * @throws IOException Never, kept for compatibility.
    */
   public Config setOut(final File out) throws IOException {
+    checkWritable();
     notNull(out, "The out is required.");
-    this.out = new FileWriter(out);
+    this.out = null;
+    this.outFile = out;
     return this;
   }
 
@@ -633,8 +935,10 @@ public class Config {
    * @throws IOException If file handler can't be obtain.
    */
   public Config setOut(final Writer writer) throws IOException {
+    checkWritable();
     notNull(writer, "The out is required.");
     this.out = writer;
+    this.outFile = null;
     return this;
   }
 
@@ -648,6 +952,7 @@ public class Config {
    * @return This configuration object.
    */
   public Config setBaseUrl(final String baseUrl) {
+    checkWritable();
     this.baseUrl = notEmpty(baseUrl, "The baseUrl is required.");
     return this;
   }
@@ -666,7 +971,10 @@ public class Config {
    * @return This configuration object.
    */
   public Config path(final String name, final String path) {
+    checkWritable();
+    unshare();
     paths.put(name, path);
+    pathTrie = null;
     return this;
   }
 
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keep parsed build files in memory, so a build file is parsed once no matter how many modules
+ * are optimized with it. Entries are keyed by the absolute path of the build file and checked
+ * against the last modified time and length of the file, so a changed build file is parsed
+ * again.
+ * <p>
+ * Callers get a copy of the parsed configuration (see {@link Config#Config(Config)}), so they are
+ * free to merge their own options into it. This class is thread-safe.
+ * </p>
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+public class ConfigCache {
+
+  /**
+   * A parsed build file.
+   */
+  private static final class Entry {
+
+    /**
+     * The last modified time of the build file.
+     */
+    private final long lastModified;
+
+    /**
+     * The length of the build file.
+     */
+    private final long length;
+
+    /**
+     * The parsed configuration.
+     */
+    private final Config config;
+
+    /**
+     * Creates a new {@link Entry}.
+     *
+     * @param lastModified The last modified time of the build file.
+     * @param length The length of the build file.
+     * @param config The parsed configuration.
+     */
+    public Entry(final long lastModified, final long length, final Config config) {
+      this.lastModified = lastModified;
+      this.length = length;
+      this.config = config;
+    }
+  }
+
+  /**
+   * The parsed build files.
+   */
+  private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+  /**
+   * Parse a build file (if it isn't in the cache or it was modified) and creates a new
+   * {@link Config} object.
+   *
+   * @param build The build file. Required.
+   * @return A copy of the parsed build file.
+   * @throws IOException If the build file can't be parsed.
+   */
+  public Config get(final File build) throws IOException {
+    notNull(build, "The build file is required.");
+    String path = build.getAbsolutePath();
+    long lastModified = build.lastModified();
+    long length = build.length();
+    synchronized (entries) {
+      Entry entry = entries.get(path);
+      if (entry == null || entry.lastModified != lastModified || entry.length != length) {
+        entry = new Entry(lastModified, length, Config.parse(build));
+        entries.put(path, entry);
+      }
+      // copies mark the parsed config as shared, so they are created under the lock too
+      return new Config(entry.config);
+    }
+  }
+
+  /**
+   * The number of parsed build files.
+   *
+   * @return The number of parsed build files.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+}
@@ -19,6 +19,7 @@ package com.github.jknack.amd4j;
 
 import static org.apache.commons.io.FilenameUtils.getExtension;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -57,15 +58,92 @@ final class DependencyCollector {
    * @return A dependency set.
    */
   public static Set<String> collect(final Config config, final Module module) {
-    // empty module?
-    if (module.content.length() == 0) {
+    if (!isScript(module)) {
       return Collections.emptySet();
     }
-    // just parse *.js files
-    if (!"js".equals(getExtension(module.uri.getPath()))) {
-      return Collections.emptySet();
+
+    Set<String> dependencies = DependencyScanner.scan(module.content, isNested(config));
+    if (dependencies == null) {
+      // the scanner gave up, use a full parser
+      dependencies = parse(config, module);
+    }
+    // check shim configuration
+    Shim shim = config.getShim(module.name);
+    if (shim != null) {
+      // add dependencies
+      if (shim.dependencies() != null) {
+        dependencies.addAll(shim.dependencies());
+      }
+    }
+    return dependencies;
+  }
+
+  /**
+   * Collect the dependencies of each nested <code>require</code> call of the given module. See
+   * {@link Config#isSplitNestedDependencies()}.
+   *
+   * @param config A configuration options.
+   * @param module An AMD module.
+   * @return The dependencies of each nested <code>require</code> call.
+   */
+  public static List<Set<String>> splitPoints(final Config config, final Module module) {
+    if (!isScript(module)) {
+      return Collections.emptyList();
+    }
+    List<Set<String>> splitPoints = DependencyScanner.splitPoints(module.content);
+    if (splitPoints == null) {
+      // the scanner gave up, use a full parser
+      splitPoints = new ArrayList<Set<String>>();
+      parse(config, module, splitPoints);
     }
+    return splitPoints;
+  }
+
+  /**
+   * True, if the module is a non empty script. Other resources have no dependencies.
+   *
+   * @param module An AMD module.
+   * @return True, if the module is a non empty script.
+   */
+  private static boolean isScript(final Module module) {
+    // just parse *.js files
+    return module.content.length() > 0 && "js".equals(getExtension(module.uri.getPath()));
+  }
 
+  /**
+   * True, if the dependencies of nested <code>require</code> calls are dependencies of the module.
+   *
+   * @param config A configuration options.
+   * @return True, if the dependencies of nested <code>require</code> calls should be collected.
+   */
+  private static boolean isNested(final Config config) {
+    return config.isFindNestedDependencies() && !config.isSplitNestedDependencies();
+  }
+
+  /**
+   * Collect the dependencies of the <code>define</code> and <code>require</code> calls using
+   * Rhino.
+   *
+   * @param config A configuration options.
+   * @param module An AMD module.
+   * @return A dependency set.
+   */
+  static Set<String> parse(final Config config, final Module module) {
+    return parse(config, module, null);
+  }
+
+  /**
+   * Collect the dependencies of the <code>define</code> and <code>require</code> calls using
+   * Rhino.
+   *
+   * @param config A configuration options.
+   * @param module An AMD module.
+   * @param splitPoints Where the dependencies of each nested <code>require</code> call are
+   *        reported or <code>null</code>.
+   * @return A dependency set.
+   */
+  static Set<String> parse(final Config config, final Module module,
+      final List<Set<String>> splitPoints) {
     return new NodeVisitor() {
       private Set<String> dependencies = new LinkedHashSet<String>();
 
@@ -78,14 +156,6 @@ final class DependencyCollector {
         Parser parser = new Parser();
         AstRoot node = parser.parse(module.content.toString(), module.name, 1);
         node.visit(this);
-        // check shim configuration
-        Shim shim = config.getShim(module.name);
-        if (shim != null) {
-          // add dependencies
-          if (shim.dependencies() != null) {
-            dependencies.addAll(shim.dependencies());
-          }
-        }
         return dependencies;
       }
 
@@ -111,11 +181,15 @@ final class DependencyCollector {
         if (target instanceof Name) {
           String name = ((Name) target).getIdentifier();
           if ("define".equals(name)) {
-            visitDependencies(node);
+            visitDependencies(node, dependencies);
           } else if ("require".equals(name)) {
             int depth = node.getParent().depth() - 1;
-            if (config.isFindNestedDependencies() || depth == 0) {
-              visitDependencies(node);
+            if (isNested(config) || depth == 0) {
+              visitDependencies(node, dependencies);
+            } else if (splitPoints != null) {
+              Set<String> splitPoint = new LinkedHashSet<String>();
+              splitPoints.add(splitPoint);
+              visitDependencies(node, splitPoint);
             }
           }
         }
@@ -126,8 +200,9 @@ final class DependencyCollector {
        * Report module's dependencies.
        *
        * @param node The function's call.
+       * @param target Where the dependencies are reported.
        */
-      private void visitDependencies(final FunctionCall node) {
+      private void visitDependencies(final FunctionCall node, final Set<String> target) {
         List<AstNode> arguments = node.getArguments();
         for (AstNode arg : arguments) {
           if (arg instanceof ArrayLiteral) {
@@ -138,9 +213,9 @@ final class DependencyCollector {
               String dependency = ((StringLiteral) dependencyNode).getValue();
               String[] dependencies = StringUtils.split(dependency, "!");
               if (dependencies.length > 1) {
-                this.dependencies.add(dependencies[0]);
+                target.add(dependencies[0]);
               }
-              this.dependencies.add(dependency);
+              target.add(dependency);
             }
             break;
           }
@@ -0,0 +1,820 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A lexical scanner that finds the dependencies of <code>define</code> and <code>require</code>
+ * calls without building an AST. It tokenizes just enough JavaScript to skip strings, comments and
+ * regular expressions and to track the nesting of brackets.
+ * <p>
+ * The scanner reports the same dependencies (in the same order) as the Rhino based parser of
+ * {@link DependencyCollector}. If it finds a construct it can't classify without a full parser
+ * (like a slash after a closing brace or an ASI sensitive <code>require</code> statement) it gives
+ * up and returns <code>null</code>, so callers can fall back to Rhino.
+ * </p>
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+final class DependencyScanner {
+
+  /**
+   * A <code>define</code> or <code>require</code> call.
+   */
+  private static final class Call {
+
+    /**
+     * True, if the dependencies of the call should be reported.
+     */
+    private final boolean collect;
+
+    /**
+     * True, if the call must be a top level statement.
+     */
+    private final boolean statement;
+
+    /**
+     * Where the dependencies are reported.
+     */
+    private final Set<String> target;
+
+    /**
+     * Number of tokens in the current argument.
+     */
+    private int tokens;
+
+    /**
+     * True, if the current argument starts with a string literal.
+     */
+    private boolean string;
+
+    /**
+     * True, if a previous argument isn't a string literal.
+     */
+    private boolean complex;
+
+    /**
+     * True, if the dependency array was found.
+     */
+    private boolean found;
+
+    /**
+     * Creates a new {@link Call}.
+     *
+     * @param collect True, if the dependencies of the call should be reported.
+     * @param statement True, if the call must be a top level statement.
+     * @param target Where the dependencies are reported.
+     */
+    public Call(final boolean collect, final boolean statement, final Set<String> target) {
+      this.collect = collect;
+      this.statement = statement;
+      this.target = target;
+    }
+  }
+
+  /**
+   * End of input.
+   */
+  private static final int EOF = 0;
+
+  /**
+   * An identifier or keyword.
+   */
+  private static final int IDENT = 1;
+
+  /**
+   * A string literal.
+   */
+  private static final int STRING = 2;
+
+  /**
+   * A number literal.
+   */
+  private static final int NUMBER = 3;
+
+  /**
+   * A regular expression literal.
+   */
+  private static final int REGEXP = 4;
+
+  /**
+   * A punctuator.
+   */
+  private static final int PUNCT = 5;
+
+  /**
+   * A slash after these keywords starts a regular expression.
+   */
+  private static final Set<String> REGEXP_KEYWORDS = new HashSet<String>(Arrays.asList("return",
+      "typeof", "instanceof", "in", "new", "delete", "void", "throw", "case", "do", "else"));
+
+  /**
+   * The JavaScript reserved words.
+   */
+  private static final Set<String> KEYWORDS = new HashSet<String>(Arrays.asList("break", "case",
+      "catch", "continue", "debugger", "default", "delete", "do", "else", "finally", "for",
+      "function", "if", "in", "instanceof", "new", "return", "switch", "this", "throw", "try",
+      "typeof", "var", "void", "while", "with", "class", "const", "enum", "export", "extends",
+      "import", "super", "null", "true", "false"));
+
+  /**
+   * The unicode line separator.
+   */
+  private static final char LINE_SEPARATOR = 0x2028;
+
+  /**
+   * The unicode paragraph separator.
+   */
+  private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+  /**
+   * The byte order mark, a whitespace for JavaScript.
+   */
+  private static final char BYTE_ORDER_MARK = 0xFEFF;
+
+  /**
+   * The initial size of the bracket stack.
+   */
+  private static final int STACK_SIZE = 32;
+
+  /**
+   * The source code.
+   */
+  private final String src;
+
+  /**
+   * The length of the source code.
+   */
+  private final int length;
+
+  /**
+   * True, if nested <code>require</code> calls should be reported.
+   */
+  private final boolean nested;
+
+  /**
+   * The dependencies.
+   */
+  private final Set<String> dependencies = new LinkedHashSet<String>();
+
+  /**
+   * The dependencies of each nested <code>require</code> call or <code>null</code> if they
+   * aren't reported.
+   */
+  private final List<Set<String>> splitPoints;
+
+  /**
+   * The current position.
+   */
+  private int pos;
+
+  /**
+   * The current token: type, start, end, preceded by a line terminator and closes the
+   * parenthesis of an <code>if</code>, <code>for</code>, <code>while</code> or <code>with</code>.
+   */
+  private int type = EOF;
+
+  /**
+   * The start of the current token.
+   */
+  private int start;
+
+  /**
+   * The end of the current token.
+   */
+  private int end;
+
+  /**
+   * True, if the current token is preceded by a line terminator.
+   */
+  private boolean newline;
+
+  /**
+   * True, if the current token closes the parenthesis of an <code>if</code>, <code>for</code>,
+   * <code>while</code> or <code>with</code>.
+   */
+  private boolean keywordParen;
+
+  /**
+   * The previous token: type.
+   */
+  private int ptype = EOF;
+
+  /**
+   * The previous token: start.
+   */
+  private int pstart;
+
+  /**
+   * The previous token: end.
+   */
+  private int pend;
+
+  /**
+   * The previous token: preceded by a line terminator.
+   */
+  private boolean pnewline;
+
+  /**
+   * The previous token: closes a keyword parenthesis.
+   */
+  private boolean pkeywordParen;
+
+  /**
+   * The token before the previous one: type.
+   */
+  private int qtype = EOF;
+
+  /**
+   * The token before the previous one: start.
+   */
+  private int qstart;
+
+  /**
+   * The token before the previous one: end.
+   */
+  private int qend;
+
+  /**
+   * The open brackets.
+   */
+  private char[] brackets = new char[STACK_SIZE];
+
+  /**
+   * True, for parenthesis that belong to an <code>if</code>, <code>for</code>, <code>while</code>
+   * or <code>with</code>.
+   */
+  private boolean[] keywordParens = new boolean[STACK_SIZE];
+
+  /**
+   * The calls of parenthesis that belong to a <code>define</code> or <code>require</code> call.
+   */
+  private Call[] calls = new Call[STACK_SIZE];
+
+  /**
+   * The number of open brackets.
+   */
+  private int depth;
+
+  /**
+   * Creates a new {@link DependencyScanner}.
+   *
+   * @param src The source code.
+   * @param nested True, if nested <code>require</code> calls should be reported.
+   * @param splitPoints Where the dependencies of each nested <code>require</code> call are
+   *        reported or <code>null</code>.
+   */
+  private DependencyScanner(final String src, final boolean nested,
+      final List<Set<String>> splitPoints) {
+    this.src = src;
+    this.length = src.length();
+    this.nested = nested;
+    this.splitPoints = splitPoints;
+  }
+
+  /**
+   * Find the dependencies of the <code>define</code> and <code>require</code> calls.
+   *
+   * @param src The source code.
+   * @param nested True, if nested <code>require</code> calls should be reported (like the
+   *        {@link Config#isFindNestedDependencies()} option).
+   * @return The dependencies or <code>null</code> if the source can't be scanned without a full
+   *         parser.
+   */
+  public static Set<String> scan(final String src, final boolean nested) {
+    return new DependencyScanner(src, nested, null).scan();
+  }
+
+  /**
+   * Find the dependencies of each nested <code>require</code> call, like:
+   * <code>require(["a", "b"], callback)</code> inside of a <code>define</code> callback.
+   *
+   * @param src The source code.
+   * @return The dependencies of each nested call, in source order, or <code>null</code> if the
+   *         source can't be scanned without a full parser.
+   */
+  public static List<Set<String>> splitPoints(final String src) {
+    List<Set<String>> splitPoints = new ArrayList<Set<String>>();
+    return new DependencyScanner(src, false, splitPoints).scan() == null ? null : splitPoints;
+  }
+
+  /**
+   * Find the dependencies.
+   *
+   * @return The dependencies or <code>null</code>.
+   */
+  private Set<String> scan() {
+    boolean statementEnd = false;
+    boolean argumentEnd = false;
+    while (next()) {
+      if (statementEnd) {
+        if (!isStatementEnd()) {
+          return null;
+        }
+        statementEnd = false;
+      }
+      if (type == EOF) {
+        return depth == 0 ? dependencies : null;
+      }
+      Call call = depth > 0 ? calls[depth - 1] : null;
+      if (argumentEnd) {
+        if (!is(',') && !is(')')) {
+          return null;
+        }
+        argumentEnd = false;
+      }
+      if (call != null) {
+        if (is(',')) {
+          call.complex |= call.tokens != 1 || !call.string;
+          call.tokens = 0;
+        } else if (is('[') && call.tokens == 0 && call.collect && !call.found) {
+          if (call.complex || !readArray(call.target)) {
+            return null;
+          }
+          call.found = true;
+          call.tokens = 1;
+          call.string = false;
+          argumentEnd = true;
+          continue;
+        } else if (call.tokens++ == 0) {
+          call.string = type == STRING;
+        }
+      }
+      if (type == PUNCT) {
+        char c = src.charAt(start);
+        if ((c == '(' || c == '[' || c == '{') && !push(c)) {
+          return null;
+        } else if (c == ')' || c == ']' || c == '}') {
+          if (depth == 0 || brackets[depth - 1] != opening(c)) {
+            return null;
+          }
+          depth--;
+          keywordParen = keywordParens[depth];
+          statementEnd = calls[depth] != null && calls[depth].statement;
+          calls[depth] = null;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The opening bracket of a closing bracket.
+   *
+   * @param c A closing bracket.
+   * @return The opening bracket.
+   */
+  private static char opening(final char c) {
+    switch (c) {
+      case ')':
+        return '(';
+      case ']':
+        return '[';
+      default:
+        return '{';
+    }
+  }
+
+  /**
+   * Open a bracket. A parenthesis after <code>define</code> or <code>require</code> starts a
+   * call.
+   *
+   * @param c The bracket.
+   * @return False, if a full parser is required to find out if the call must be reported.
+   */
+  private boolean push(final char c) {
+    if (depth == brackets.length) {
+      brackets = Arrays.copyOf(brackets, depth * 2);
+      keywordParens = Arrays.copyOf(keywordParens, depth * 2);
+      calls = Arrays.copyOf(calls, depth * 2);
+    }
+    Call call = null;
+    boolean keyword = false;
+    if (c == '(' && ptype == IDENT) {
+      String word = src.substring(pstart, pend);
+      keyword = word.equals("if") || word.equals("for") || word.equals("while")
+          || word.equals("with");
+      boolean target = (word.equals("define") || word.equals("require"))
+          && !(qtype == PUNCT && src.charAt(qstart) == '.')
+          && !(qtype == IDENT && (isWord(qstart, qend, "function") || isWord(qstart, qend, "new")));
+      if (target) {
+        if (word.equals("define") || nested) {
+          call = new Call(true, false, dependencies);
+        } else {
+          int statement = isStatementStart();
+          if (statement < 0) {
+            return false;
+          }
+          if (statement == 0 && splitPoints != null) {
+            Set<String> splitPoint = new LinkedHashSet<String>();
+            splitPoints.add(splitPoint);
+            call = new Call(true, false, splitPoint);
+          } else {
+            call = new Call(statement > 0, statement > 0, dependencies);
+          }
+        }
+      }
+    }
+    brackets[depth] = c;
+    keywordParens[depth] = keyword;
+    calls[depth] = call;
+    depth++;
+    return true;
+  }
+
+  /**
+   * Find out if the previous token (a <code>require</code>) starts a top level statement. Like
+   * Rhino, only top level <code>require</code> statements are reported if nested dependencies
+   * are off.
+   *
+   * @return A positive number for top level statements, zero for nested calls and a negative
+   *         number if a full parser is required.
+   */
+  private int isStatementStart() {
+    if (depth > 0) {
+      return 0;
+    }
+    if (qtype == EOF) {
+      return 1;
+    }
+    if (qtype == PUNCT) {
+      char c = src.charAt(qstart);
+      if (c == ';' || c == '}') {
+        return 1;
+      }
+      if (c == ')') {
+        // automatic semicolon insertion or the body of an if/for/while?
+        return pnewline ? -1 : 0;
+      }
+      return pnewline && c == ']' ? 1 : 0;
+    }
+    if (qtype == IDENT && KEYWORDS.contains(src.substring(qstart, qend))) {
+      // like: else require(...) or return (ASI) require(...)
+      return pnewline ? -1 : 0;
+    }
+    return pnewline ? 1 : 0;
+  }
+
+  /**
+   * True, if the current token ends the statement of a top level <code>require</code> call.
+   *
+   * @return True, if the current token ends the statement of a <code>require</code> call.
+   */
+  private boolean isStatementEnd() {
+    if (type == EOF || is(';')) {
+      return true;
+    }
+    if (!newline) {
+      return false;
+    }
+    if (type == IDENT) {
+      return !isWord(start, end, "in") && !isWord(start, end, "instanceof");
+    }
+    return type == STRING || type == NUMBER;
+  }
+
+  /**
+   * Read an array of string literals. The current token must be a <code>[</code>.
+   *
+   * @param target Where the dependencies are reported.
+   * @return False, if the array has something else than string literals.
+   */
+  private boolean readArray(final Set<String> target) {
+    if (!next()) {
+      return false;
+    }
+    if (is(']')) {
+      return true;
+    }
+    while (type == STRING) {
+      addDependency(target, value(start + 1, end - 1));
+      if (!next()) {
+        return false;
+      }
+      if (is(']')) {
+        return true;
+      }
+      if (!is(',') || !next()) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Report a dependency. The plugin of a plugin dependency (like <code>text!x.html</code>) is
+   * reported too.
+   *
+   * @param target Where the dependency is reported.
+   * @param dependency The dependency.
+   */
+  private static void addDependency(final Set<String> target, final String dependency) {
+    String[] segments = StringUtils.split(dependency, "!");
+    if (segments.length > 1) {
+      target.add(segments[0]);
+    }
+    target.add(dependency);
+  }
+
+  /**
+   * Move to the next token.
+   *
+   * @return False, if the source can't be tokenized without a full parser.
+   */
+  private boolean next() {
+    qtype = ptype;
+    qstart = pstart;
+    qend = pend;
+    ptype = type;
+    pstart = start;
+    pend = end;
+    pnewline = newline;
+    pkeywordParen = keywordParen;
+    newline = false;
+    keywordParen = false;
+    if (!skipWhitespace()) {
+      return false;
+    }
+    start = pos;
+    if (pos >= length) {
+      type = EOF;
+      end = pos;
+      return true;
+    }
+    char c = src.charAt(pos);
+    if (c == '"' || c == '\'') {
+      type = STRING;
+      if (!skipString(c)) {
+        return false;
+      }
+    } else if (Character.isJavaIdentifierStart(c)) {
+      type = IDENT;
+      pos++;
+      while (pos < length && Character.isJavaIdentifierPart(src.charAt(pos))) {
+        pos++;
+      }
+    } else if (Character.isDigit(c)
+        || (c == '.' && pos + 1 < length && Character.isDigit(src.charAt(pos + 1)))) {
+      type = NUMBER;
+      pos++;
+      while (pos < length && (Character.isLetterOrDigit(src.charAt(pos))
+          || src.charAt(pos) == '.')) {
+        pos++;
+      }
+    } else if (c == '/') {
+      int regexp = isRegExp();
+      if (regexp < 0) {
+        return false;
+      }
+      if (regexp > 0) {
+        type = REGEXP;
+        if (!skipRegExp()) {
+          return false;
+        }
+      } else {
+        type = PUNCT;
+        pos++;
+      }
+    } else if (c == '`' || c == '\\' || c == '#' || c == '@') {
+      // template, escaped identifier or not ES5
+      return false;
+    } else {
+      type = PUNCT;
+      pos++;
+      if ((c == '+' || c == '-') && pos < length && src.charAt(pos) == c) {
+        pos++;
+      }
+    }
+    end = pos;
+    return true;
+  }
+
+  /**
+   * Skip whitespaces and comments.
+   *
+   * @return False, if a comment isn't closed.
+   */
+  private boolean skipWhitespace() {
+    while (pos < length) {
+      char c = src.charAt(pos);
+      if (isLineTerminator(c)) {
+        newline = true;
+        pos++;
+      } else if (Character.isWhitespace(c) || Character.isSpaceChar(c) || c == BYTE_ORDER_MARK) {
+        pos++;
+      } else if (c == '/' && pos + 1 < length && src.charAt(pos + 1) == '/') {
+        while (pos < length && !isLineTerminator(src.charAt(pos))) {
+          pos++;
+        }
+      } else if (c == '/' && pos + 1 < length && src.charAt(pos + 1) == '*') {
+        int close = src.indexOf("*/", pos + 2);
+        if (close < 0) {
+          return false;
+        }
+        for (int i = pos + 2; i < close && !newline; i++) {
+          newline = isLineTerminator(src.charAt(i));
+        }
+        pos = close + 2;
+      } else {
+        return true;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Skip a string literal.
+   *
+   * @param quote The quote char.
+   * @return False, if the string isn't closed.
+   */
+  private boolean skipString(final char quote) {
+    pos++;
+    while (pos < length) {
+      char c = src.charAt(pos++);
+      if (c == quote) {
+        return true;
+      }
+      if (c == '\\') {
+        pos++;
+      } else if (isLineTerminator(c)) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Skip a regular expression literal (and the flags).
+   *
+   * @return False, if the regular expression isn't closed.
+   */
+  private boolean skipRegExp() {
+    boolean charClass = false;
+    pos++;
+    while (pos < length) {
+      char c = src.charAt(pos++);
+      if (c == '\\') {
+        pos++;
+      } else if (isLineTerminator(c)) {
+        return false;
+      } else if (c == '[') {
+        charClass = true;
+      } else if (c == ']') {
+        charClass = false;
+      } else if (c == '/' && !charClass) {
+        while (pos < length && Character.isJavaIdentifierPart(src.charAt(pos))) {
+          pos++;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find out if a slash starts a regular expression or a division, using the previous token.
+   *
+   * @return A positive number for regular expressions, zero for divisions and a negative number if
+   *         a full parser is required.
+   */
+  private int isRegExp() {
+    switch (ptype) {
+      case EOF:
+        return 1;
+      case IDENT:
+        return REGEXP_KEYWORDS.contains(src.substring(pstart, pend)) ? 1 : 0;
+      case PUNCT:
+        char c = src.charAt(pstart);
+        if (c == ')') {
+          return pkeywordParen ? 1 : 0;
+        }
+        if (c == '}') {
+          // end of a block or an object literal?
+          return -1;
+        }
+        return c == ']' || pend - pstart > 1 ? 0 : 1;
+      default:
+        return 0;
+    }
+  }
+
+  /**
+   * Decode the value of a string literal.
+   *
+   * @param from The start of the string (after the quote).
+   * @param to The end of the string (before the quote).
+   * @return The string value.
+   */
+  private String value(final int from, final int to) {
+    if (src.indexOf('\\', from) < 0 || src.indexOf('\\', from) >= to) {
+      return src.substring(from, to);
+    }
+    StringBuilder buffer = new StringBuilder(to - from);
+    int i = from;
+    while (i < to) {
+      char c = src.charAt(i++);
+      if (c != '\\') {
+        buffer.append(c);
+        continue;
+      }
+      c = src.charAt(i++);
+      switch (c) {
+        case 'b':
+          buffer.append('\b');
+          break;
+        case 'f':
+          buffer.append('\f');
+          break;
+        case 'n':
+          buffer.append('\n');
+          break;
+        case 'r':
+          buffer.append('\r');
+          break;
+        case 't':
+          buffer.append('\t');
+          break;
+        case '0':
+          buffer.append('\0');
+          break;
+        case 'v':
+          buffer.append('\u000B');
+          break;
+        case 'x':
+          buffer.append((char) Integer.parseInt(src.substring(i, i + 2), 16));
+          i += 2;
+          break;
+        case 'u':
+          buffer.append((char) Integer.parseInt(src.substring(i, i + 4), 16));
+          i += 4;
+          break;
+        default:
+          if (c == '\r' && i < to && src.charAt(i) == '\n') {
+            // line continuation
+            i++;
+          } else if (!isLineTerminator(c)) {
+            buffer.append(c);
+          }
+          break;
+      }
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * True, if the current token is the given punctuator.
+   *
+   * @param c The punctuator.
+   * @return True, if the current token is the given punctuator.
+   */
+  private boolean is(final char c) {
+    return type == PUNCT && end - start == 1 && src.charAt(start) == c;
+  }
+
+  /**
+   * True, if the source region is the given word.
+   *
+   * @param from The start of the region.
+   * @param to The end of the region.
+   * @param word The word.
+   * @return True, if the source region is the given word.
+   */
+  private boolean isWord(final int from, final int to, final String word) {
+    return to - from == word.length() && src.startsWith(word, from);
+  }
+
+  /**
+   * True, for JavaScript line terminators.
+   *
+   * @param c The char to test.
+   * @return True, for JavaScript line terminators.
+   */
+  private static boolean isLineTerminator(final char c) {
+    return c == '\n' || c == '\r' || c == LINE_SEPARATOR || c == PARAGRAPH_SEPARATOR;
+  }
+}
@@ -17,20 +17,112 @@
  */
 package com.github.jknack.amd4j;
 
+import static org.apache.commons.lang3.Validate.validState;
+
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.NodeVisitor;
+
 /**
- * A Json parser adapted from {@link org.mozilla.javascript.json.JsonParser}.
+ * A Json parser adapted from {@link org.mozilla.javascript.json.JsonParser}. It also understand
+ * the JavaScript object literals of r.js build files, see {@link #createLiteral(CharSequence,
+ * String)}.
+ * <p>
+ * The parser is a pull parser: {@link #next()} returns one {@link Event} at a time and reads the
+ * input in place. Text and numbers are decoded lazily, only if they are requested. The
+ * {@link #parse(CharSequence)} methods build a tree of maps and lists on top of it.
+ * </p>
  *
  * @author edgar.espina
  * @since 0.2.0
  */
 public final class JsonParser {
 
+  /**
+   * The parsing events.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  public enum Event {
+    /**
+     * Start of an object: <code>{</code>.
+     */
+    START_OBJECT("{"),
+
+    /**
+     * End of an object: <code>}</code>.
+     */
+    END_OBJECT("}"),
+
+    /**
+     * Start of an array: <code>[</code>.
+     */
+    START_ARRAY("["),
+
+    /**
+     * End of an array: <code>]</code>.
+     */
+    END_ARRAY("]"),
+
+    /**
+     * A property name.
+     */
+    FIELD_NAME(null),
+
+    /**
+     * A string value (or the source of a function value in object literals).
+     */
+    VALUE_STRING(null),
+
+    /**
+     * A number value.
+     */
+    VALUE_NUMBER(null),
+
+    /**
+     * A true value.
+     */
+    VALUE_TRUE("true"),
+
+    /**
+     * A false value.
+     */
+    VALUE_FALSE("false"),
+
+    /**
+     * A null value.
+     */
+    VALUE_NULL("null");
+
+    /**
+     * The event's text or null for variable text.
+     */
+    private final String token;
+
+    /**
+     * Creates a new {@link Event}.
+     *
+     * @param token The event's text or null for variable text.
+     */
+    private Event(final String token) {
+      this.token = token;
+    }
+  }
+
+  /**
+   * The initial capacity of the nesting stack.
+   */
+  private static final int STACK_SIZE = 16;
+
   /**
    * The current parser position.
    */
@@ -39,22 +131,129 @@ public final class JsonParser {
   /**
    * The length of the input.
    */
-  private int length;
+  private final int length;
 
   /**
    * The JSON input.
    */
-  private StringBuilder src;
+  private final CharSequence src;
 
   /**
    * The file's name.
    */
-  private String filename;
+  private final String filename;
+
+  /**
+   * True, for JavaScript object literals: comments, single quotes, unquoted keys, trailing commas
+   * and function values are allowed.
+   */
+  private final boolean relaxed;
+
+  /**
+   * The nesting stack: true for objects and false for arrays.
+   */
+  private boolean[] objects = new boolean[STACK_SIZE];
+
+  /**
+   * The nesting stack: true, if a comma is required before the next element.
+   */
+  private boolean[] commas = new boolean[STACK_SIZE];
+
+  /**
+   * The nesting depth.
+   */
+  private int depth;
+
+  /**
+   * True, if the root value was read.
+   */
+  private boolean started;
+
+  /**
+   * True, if the last event was a {@link Event#FIELD_NAME}.
+   */
+  private boolean afterField;
+
+  /**
+   * The current event.
+   */
+  private Event event;
+
+  /**
+   * The start of the current token.
+   */
+  private int start;
+
+  /**
+   * The end of the current token.
+   */
+  private int end;
+
+  /**
+   * True, if the current string has escape sequences.
+   */
+  private boolean escaped;
+
+  /**
+   * The decoded text of the current token or null.
+   */
+  private String text;
+
+  /**
+   * Creates a new {@link JsonParser}.
+   *
+   * @param src The input.
+   * @param filename The file's name.
+   * @param relaxed True, for JavaScript object literals.
+   * @throws JsonParseException If the input is null.
+   */
+  private JsonParser(final CharSequence src, final String filename, final boolean relaxed)
+      throws JsonParseException {
+    if (src == null) {
+      throw new JsonParseException("Input string may not be null");
+    }
+    this.src = src;
+    this.filename = filename;
+    this.relaxed = relaxed;
+    this.length = src.length();
+  }
 
   /**
-   * Not allowed.
+   * Creates a pull parser for a JSON input.
+   *
+   * @param json The json input.
+   * @param filename A file name.
+   * @return A new pull parser.
+   * @throws JsonParseException If the input is null.
    */
-  private JsonParser() {
+  public static JsonParser create(final CharSequence json, final String filename)
+      throws JsonParseException {
+    return new JsonParser(json, filename, false);
+  }
+
+  /**
+   * Creates a pull parser for the first JavaScript object literal found in the input, like in:
+   * <code>require.config({...});</code>. Keys might be unquoted, strings might use single quotes,
+   * comments and trailing commas are ignored and functions are reported as
+   * {@link Event#VALUE_STRING} with the function's source. The rest of the input is ignored.
+   *
+   * @param javaScript The JavaScript input.
+   * @param filename A file name.
+   * @return A new pull parser.
+   * @throws JsonParseException If there is no object literal.
+   */
+  public static JsonParser createLiteral(final CharSequence javaScript, final String filename)
+      throws JsonParseException {
+    JsonParser parser = new JsonParser(javaScript, filename, true);
+    parser.consumeWhitespace();
+    while (parser.pos < parser.length && parser.src.charAt(parser.pos) != '{') {
+      parser.pos++;
+      parser.consumeWhitespace();
+    }
+    if (parser.pos == parser.length) {
+      throw parser.reportError("{", "eof", parser.pos);
+    }
+    return parser;
   }
 
   /**
@@ -65,8 +264,8 @@ public final class JsonParser {
    * @return A JSON object.
    * @throws IOException If the parsing process fail.
    */
-  public static Object parse(final String json, final String filename) throws IOException {
-    return new JsonParser().parseValue(json, filename);
+  public static Object parse(final CharSequence json, final String filename) throws IOException {
+    return create(json, filename).readTree();
   }
 
   /**
@@ -76,230 +275,483 @@ public final class JsonParser {
    * @return A JSON object.
    * @throws IOException If the parsing process fail.
    */
-  public static Object parse(final String json) throws IOException {
-    return new JsonParser().parseValue(json, null);
+  public static Object parse(final CharSequence json) throws IOException {
+    return parse(json, null);
   }
 
   /**
-   * Parse a JSON input.
+   * Parse the first JavaScript object literal found in the input, see
+   * {@link #createLiteral(CharSequence, String)}.
    *
-   * @param json The json input.
-   * @param filename The json file's name.
+   * @param javaScript The JavaScript input.
+   * @param filename A file name.
    * @return A JSON object.
+   * @throws IOException If the parsing process fail.
+   */
+  @SuppressWarnings("unchecked")
+  public static Map<String, Object> parseLiteral(final CharSequence javaScript,
+      final String filename) throws IOException {
+    return (Map<String, Object>) createLiteral(javaScript, filename).readTree();
+  }
+
+  /**
+   * Read the next event.
+   *
+   * @return The next event or null at the end of the input.
    * @throws JsonParseException If the parsing process fail.
    */
-  private Object parseValue(final String json, final String filename) throws JsonParseException {
-    if (json == null) {
-      throw new JsonParseException("Input string may not be null");
-    }
-    this.filename = filename;
-    pos = 0;
-    length = json.length();
-    src = new StringBuilder(json);
-    Object value = readValue();
+  public Event next() throws JsonParseException {
+    text = null;
     consumeWhitespace();
-    return value;
+    if (depth == 0) {
+      if (started) {
+        event = null;
+      } else {
+        started = true;
+        if (pos >= length) {
+          throw new JsonParseException("Empty JSON string");
+        }
+        event = readValue();
+      }
+    } else if (objects[depth - 1]) {
+      event = nextInObject();
+    } else {
+      event = nextInArray();
+    }
+    return event;
   }
 
   /**
-   * Parse a JSON value.
+   * The current event.
+   *
+   * @return The current event or null.
+   */
+  public Event getEvent() {
+    return event;
+  }
+
+  /**
+   * The text of the current event. Strings are decoded the first time this method is called.
+   *
+   * @return The text of the current event.
+   */
+  public String getText() {
+    validState(event != null, "No current event");
+    if (event.token != null) {
+      return event.token;
+    }
+    if (text == null) {
+      text = escaped ? decode() : src.subSequence(start, end).toString();
+    }
+    return text;
+  }
+
+  /**
+   * Compare the text of the current event without decoding it (unless it has escape sequences).
+   *
+   * @param value The value to compare.
+   * @return True, if the text of the current event is equal to the given value.
+   */
+  public boolean textEquals(final String value) {
+    if (event == null || event.token != null || escaped || text != null) {
+      return event != null && getText().equals(value);
+    }
+    if (end - start != value.length()) {
+      return false;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      if (src.charAt(start + i) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The string value of the current event.
+   *
+   * @return The string value or null for {@link Event#VALUE_NULL}.
+   * @throws JsonParseException If the current event isn't a string or null.
+   */
+  public String getString() throws JsonParseException {
+    if (event == Event.VALUE_NULL) {
+      return null;
+    }
+    if (event != Event.VALUE_STRING) {
+      throw reportError("string", getText(), start);
+    }
+    return getText();
+  }
+
+  /**
+   * The boolean value of the current event.
+   *
+   * @return The boolean value.
+   * @throws JsonParseException If the current event isn't a boolean.
+   */
+  public boolean getBoolean() throws JsonParseException {
+    if (event != Event.VALUE_TRUE && event != Event.VALUE_FALSE) {
+      throw reportError("boolean", getText(), start);
+    }
+    return event == Event.VALUE_TRUE;
+  }
+
+  /**
+   * The number value of the current event: an integer or a double.
+   *
+   * @return The number value.
+   * @throws JsonParseException If the current event isn't a valid number.
+   */
+  public Number getNumber() throws JsonParseException {
+    if (event != Event.VALUE_NUMBER) {
+      throw reportError("number", getText(), start);
+    }
+    String num = getText();
+    try {
+      final double dval = Double.parseDouble(num);
+      final int ival = (int) dval;
+      if (ival == dval) {
+        return Integer.valueOf(ival);
+      } else {
+        return Double.valueOf(dval);
+      }
+    } catch (NumberFormatException nfe) {
+      throw reportError(null, num, end);
+    }
+  }
+
+  /**
+   * Skip the children of the current object or array, the current event will be the matching
+   * {@link Event#END_OBJECT} or {@link Event#END_ARRAY}. It does nothing for other events.
    *
-   * @return A JSON value.
    * @throws JsonParseException If the parsing process fail.
    */
-  private Object readValue() throws JsonParseException {
-    consumeWhitespace();
-    while (pos < length) {
-      char c = src.charAt(pos++);
-      switch (c) {
-        case '{':
-          return readObject();
-        case '[':
-          return readArray();
-        case 't':
-          return readTrue();
-        case 'f':
-          return readFalse();
-        case '"':
-          return readString();
-        case 'n':
-          return readNull();
-        case '1':
-        case '2':
-        case '3':
-        case '4':
-        case '5':
-        case '6':
-        case '7':
-        case '8':
-        case '9':
-        case '0':
-        case '-':
-          return readNumber(c);
-        default:
-          throw reportError(null, c, pos - 1);
+  public void skipChildren() throws JsonParseException {
+    if (event == Event.START_OBJECT || event == Event.START_ARRAY) {
+      int target = depth - 1;
+      while (depth > target) {
+        next();
       }
     }
-    throw new JsonParseException("Empty JSON string");
   }
 
   /**
-   * Parse a JSON object.
+   * Build a tree of maps and lists from the current position.
    *
-   * @return A JSON object.
+   * @return A JSON value.
    * @throws JsonParseException If the parsing process fail.
    */
-  private Object readObject() throws JsonParseException {
-    Map<String, Object> object = new LinkedHashMap<String, Object>();
-    String id;
-    Object value;
-    boolean needsComma = false;
-    consumeWhitespace();
+  private Object readTree() throws JsonParseException {
+    if (event == null && next() == null) {
+      throw new JsonParseException("Empty JSON string");
+    }
+    switch (event) {
+      case START_OBJECT:
+        Map<String, Object> object = new LinkedHashMap<String, Object>();
+        while (next() != Event.END_OBJECT) {
+          String id = getText();
+          next();
+          object.put(id, readTree());
+        }
+        return object;
+      case START_ARRAY:
+        List<Object> list = new ArrayList<Object>();
+        while (next() != Event.END_ARRAY) {
+          list.add(readTree());
+        }
+        return list;
+      case VALUE_STRING:
+        return getText();
+      case VALUE_NUMBER:
+        return getNumber();
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Read the next event of an object.
+   *
+   * @return The next event.
+   * @throws JsonParseException If the parsing process fail.
+   */
+  private Event nextInObject() throws JsonParseException {
+    if (afterField) {
+      afterField = false;
+      consume(':');
+      consumeWhitespace();
+      return readValue();
+    }
     while (pos < length) {
       char c = src.charAt(pos++);
       switch (c) {
         case '}':
-          return object;
+          depth--;
+          return Event.END_OBJECT;
         case ',':
-          if (!needsComma) {
+          if (!commas[depth - 1]) {
             throw reportError(null, ",", pos - 1);
           }
-          needsComma = false;
+          commas[depth - 1] = false;
           break;
         case '"':
-          if (needsComma) {
-            throw reportError(",", '"', pos - 1);
+        case '\'':
+          if (c == '\'' && !relaxed) {
+            throw reportError(null, c, pos - 1);
           }
-          id = readString();
-          consume(':');
-          value = readValue();
-
-          object.put(id, value);
-
-          needsComma = true;
-          break;
+          if (commas[depth - 1]) {
+            throw reportError(",", c, pos - 1);
+          }
+          scanString(c);
+          return field();
         default:
+          if (relaxed && Character.isJavaIdentifierStart(c)) {
+            if (commas[depth - 1]) {
+              throw reportError(",", c, pos - 1);
+            }
+            start = pos - 1;
+            while (pos < length && Character.isJavaIdentifierPart(src.charAt(pos))) {
+              pos++;
+            }
+            end = pos;
+            escaped = false;
+            return field();
+          }
           throw reportError(null, c, pos - 1);
       }
       consumeWhitespace();
     }
-    throw reportError("}", pos == length ? "eof" : src.charAt(pos - 1), pos - 1);
+    throw reportError("}", "eof", pos - 1);
   }
 
   /**
-   * Parse a JSON array.
+   * Mark the current token as a property name.
    *
-   * @return A JSON array.
+   * @return A {@link Event#FIELD_NAME}.
+   */
+  private Event field() {
+    commas[depth - 1] = true;
+    afterField = true;
+    return Event.FIELD_NAME;
+  }
+
+  /**
+   * Read the next event of an array.
+   *
+   * @return The next event.
    * @throws JsonParseException If the parsing process fail.
    */
-  private Object readArray() throws JsonParseException {
-    List<Object> list = new ArrayList<Object>();
-    boolean needsComma = false;
-    consumeWhitespace();
+  private Event nextInArray() throws JsonParseException {
     while (pos < length) {
       char c = src.charAt(pos);
       switch (c) {
         case ']':
           pos += 1;
-          return list;
+          depth--;
+          return Event.END_ARRAY;
         case ',':
-          if (!needsComma) {
+          if (!commas[depth - 1]) {
             throw reportError(null, c, pos);
           }
-          needsComma = false;
+          commas[depth - 1] = false;
           pos += 1;
           break;
         default:
-          if (needsComma) {
+          if (commas[depth - 1]) {
             throw reportError(",", c, pos);
           }
-          list.add(readValue());
-          needsComma = true;
+          commas[depth - 1] = true;
+          return readValue();
       }
       consumeWhitespace();
     }
-    throw reportError("]", pos == length ? "eof" : src.charAt(pos - 1), pos);
+    throw reportError("]", "eof", pos);
   }
 
   /**
-   * Parse a JSON string.
+   * Read a JSON value.
    *
-   * @return A JSON string.
+   * @return A value event.
+   * @throws JsonParseException If the parsing process fail.
+   */
+  private Event readValue() throws JsonParseException {
+    if (pos >= length) {
+      throw reportError(null, "eof", pos);
+    }
+    char c = src.charAt(pos++);
+    start = pos - 1;
+    switch (c) {
+      case '{':
+        return push(true, Event.START_OBJECT);
+      case '[':
+        return push(false, Event.START_ARRAY);
+      case 't':
+        literal("true");
+        return Event.VALUE_TRUE;
+      case 'f':
+        if (relaxed && regionMatches(pos - 1, "function")) {
+          text = readFunction();
+          return Event.VALUE_STRING;
+        }
+        literal("false");
+        return Event.VALUE_FALSE;
+      case 'n':
+        literal("null");
+        return Event.VALUE_NULL;
+      case '\'':
+        if (!relaxed) {
+          throw reportError(null, c, pos - 1);
+        }
+        scanString(c);
+        return Event.VALUE_STRING;
+      case '"':
+        scanString(c);
+        return Event.VALUE_STRING;
+      case '1':
+      case '2':
+      case '3':
+      case '4':
+      case '5':
+      case '6':
+      case '7':
+      case '8':
+      case '9':
+      case '0':
+      case '-':
+        scanNumber();
+        return Event.VALUE_NUMBER;
+      default:
+        throw reportError(null, c, pos - 1);
+    }
+  }
+
+  /**
+   * Push an object or array in the nesting stack.
+   *
+   * @param object True for objects.
+   * @param event The start event.
+   * @return The start event.
+   */
+  private Event push(final boolean object, final Event event) {
+    if (depth == objects.length) {
+      objects = Arrays.copyOf(objects, depth * 2);
+      commas = Arrays.copyOf(commas, depth * 2);
+    }
+    objects[depth] = object;
+    commas[depth] = false;
+    depth++;
+    return event;
+  }
+
+  /**
+   * Scan a JSON string. The string is validated but not decoded.
+   *
+   * @param quote The string's delimiter.
    * @throws JsonParseException If the parsing process fail.
    */
-  private String readString() throws JsonParseException {
-    StringBuilder b = new StringBuilder();
+  private void scanString(final char quote) throws JsonParseException {
+    start = pos;
+    escaped = false;
     while (pos < length) {
       char c = src.charAt(pos++);
-      if (c <= '\u001F') {
+      if (c <= '\u001F' && (!relaxed || c == '\n' || c == '\r')) {
         throw reportError(null, c, pos - 1);
       }
-      switch (c) {
-        case '\\':
-          if (pos >= length) {
-            throw reportError('"', "eof", pos - 1);
-          }
-          c = src.charAt(pos++);
-          switch (c) {
-            case '"':
-              b.append('"');
-              break;
-            case '\\':
-              b.append('\\');
-              break;
-            case '/':
-              b.append('/');
-              break;
-            case 'b':
-              b.append('\b');
-              break;
-            case 'f':
-              b.append('\f');
-              break;
-            case 'n':
-              b.append('\n');
-              break;
-            case 'r':
-              b.append('\r');
-              break;
-            case 't':
-              b.append('\t');
-              break;
-            case 'u':
-              if (length - pos < 5) {
-                throw reportError(null, "\\u" + src.substring(pos), pos - 1);
-              }
-              try {
-                b.append((char) Integer.parseInt(src.substring(pos, pos + 4), 16));
-                pos += 4;
-              } catch (NumberFormatException nfx) {
-                throw reportError(null, src.substring(pos, pos + 4), pos - 1);
+      if (c == '\\') {
+        if (pos >= length) {
+          throw reportError(quote, "eof", pos - 1);
+        }
+        escaped = true;
+        c = src.charAt(pos++);
+        switch (c) {
+          case '"':
+          case '\\':
+          case '/':
+          case 'b':
+          case 'f':
+          case 'n':
+          case 'r':
+          case 't':
+            break;
+          case 'u':
+            if (length - pos < 5) {
+              throw reportError(null, "\\u" + src.subSequence(pos, length), pos - 1);
+            }
+            for (int i = 0; i < 4; i++) {
+              if (Character.digit(src.charAt(pos + i), 16) < 0) {
+                throw reportError(null, src.subSequence(pos, pos + 4), pos - 1);
               }
-              break;
-            default:
+            }
+            pos += 4;
+            break;
+          default:
+            if (!relaxed) {
               throw reportError(null, "'\\" + c + "'", pos - 1);
-          }
+            }
+            break;
+        }
+      } else if (c == quote) {
+        end = pos - 1;
+        return;
+      }
+    }
+    throw reportError(quote, "eof", pos - 1);
+  }
+
+  /**
+   * Decode the current string.
+   *
+   * @return A JSON string.
+   */
+  private String decode() {
+    StringBuilder b = new StringBuilder(end - start);
+    int i = start;
+    while (i < end) {
+      char c = src.charAt(i++);
+      if (c != '\\') {
+        b.append(c);
+        continue;
+      }
+      c = src.charAt(i++);
+      switch (c) {
+        case 'b':
+          b.append('\b');
+          break;
+        case 'f':
+          b.append('\f');
+          break;
+        case 'n':
+          b.append('\n');
+          break;
+        case 'r':
+          b.append('\r');
+          break;
+        case 't':
+          b.append('\t');
+          break;
+        case 'u':
+          b.append((char) Integer.parseInt(src.subSequence(i, i + 4).toString(), 16));
+          i += 4;
           break;
-        case '"':
-          return b.toString();
         default:
           b.append(c);
           break;
       }
     }
-    throw reportError('"', pos == length ? "eof" : src.charAt(pos - 1), pos - 1);
+    return b.toString();
   }
 
   /**
-   * Parse a JSON number.
+   * Scan a JSON number. The number is validated but not converted.
    *
-   * @param first The matched token.
-   * @return A JSON number.
    * @throws JsonParseException If the parsing process fail.
    */
-  private Number readNumber(final char first) throws JsonParseException {
-    StringBuilder b = new StringBuilder();
-    b.append(first);
+  private void scanNumber() throws JsonParseException {
+    start = pos - 1;
     while (pos < length) {
       char c = src.charAt(pos);
       if (!Character.isDigit(c)
@@ -311,90 +763,162 @@ public final class JsonParser {
         break;
       }
       pos += 1;
-      b.append(c);
     }
-    String num = b.toString();
-    int numLength = num.length();
-    try {
-      // check for leading zeroes
-      for (int i = 0; i < numLength; i++) {
-        char c = num.charAt(i);
-        if (Character.isDigit(c)) {
-          if (c == '0'
-              && numLength > i + 1
-              && Character.isDigit(num.charAt(i + 1))) {
-            throw reportError("number", num, pos - num.length() + 1);
-          }
-          break;
+    end = pos;
+    // check for leading zeroes
+    for (int i = start; i < end; i++) {
+      char c = src.charAt(i);
+      if (Character.isDigit(c)) {
+        if (c == '0' && end > i + 1 && Character.isDigit(src.charAt(i + 1))) {
+          throw reportError("number", src.subSequence(start, end), start + 1);
         }
+        break;
       }
-      final double dval = Double.parseDouble(num);
-      final int ival = (int) dval;
-      if (ival == dval) {
-        return Integer.valueOf(ival);
-      } else {
-        return Double.valueOf(dval);
-      }
-    } catch (NumberFormatException nfe) {
-      throw reportError(null, num, pos);
     }
   }
 
   /**
-   * Parse a true literal.
+   * Parse a literal: true, false or null.
    *
-   * @return A true literal.
+   * @param literal The expected literal.
    * @throws JsonParseException If the parsing process fail.
    */
-  private Boolean readTrue() throws JsonParseException {
-    if (length - pos < 3
-        || src.charAt(pos) != 'r'
-        || src.charAt(pos + 1) != 'u'
-        || src.charAt(pos + 2) != 'e') {
-      throw reportError("true", src.substring(pos - 1, Math.min(pos + 3, length)), pos - 1);
+  private void literal(final String literal) throws JsonParseException {
+    int rest = literal.length() - 1;
+    if (!regionMatches(pos - 1, literal)) {
+      throw reportError(literal, src.subSequence(pos - 1, Math.min(pos + rest, length)), pos - 1);
     }
-    pos += 3;
-    return Boolean.TRUE;
+    pos += rest;
   }
 
   /**
-   * Parse a false literal.
+   * Parse a function and returns the function's source (normalized by Rhino).
    *
-   * @return A false literal.
+   * @return The function's source.
    * @throws JsonParseException If the parsing process fail.
    */
+  private String readFunction() throws JsonParseException {
+    int begin = pos - 1;
+    while (pos < length && src.charAt(pos) != '{') {
+      pos++;
+    }
+    int braces = 0;
+    while (pos < length) {
+      char c = src.charAt(pos++);
+      switch (c) {
+        case '{':
+          braces++;
+          break;
+        case '}':
+          braces--;
+          if (braces == 0) {
+            return normalize(src.subSequence(begin, pos).toString());
+          }
+          break;
+        case '"':
+        case '\'':
+          scanString(c);
+          break;
+        case '/':
+          if (pos < length && (src.charAt(pos) == '/' || src.charAt(pos) == '*')) {
+            pos--;
+            consumeWhitespace();
+          } else if (isRegExp(pos - 1)) {
+            skipRegExp();
+          }
+          break;
+        default:
+          break;
+      }
+    }
+    throw reportError("}", "eof", pos);
+  }
+
+  /**
+   * True, if the slash at the given position starts a regular expression literal. That's the
+   * case after an operator, a punctuator or a keyword like <code>return</code>.
+   *
+   * @param slash The slash position.
+   * @return True, if the slash starts a regular expression literal.
+   */
+  private boolean isRegExp(final int slash) {
+    int last = slash;
+    while (last > 0 && Character.isWhitespace(src.charAt(last - 1))) {
+      last--;
+    }
+    if (last == 0 || "(,=:[!&|?{};+-*%<>~^".indexOf(src.charAt(last - 1)) >= 0) {
+      return true;
+    }
+    int first = last;
+    while (first > 0 && Character.isJavaIdentifierPart(src.charAt(first - 1))) {
+      first--;
+    }
+    String word = src.subSequence(first, last).toString();
+    return word.equals("return") || word.equals("typeof") || word.equals("in")
+        || word.equals("case") || word.equals("void");
+  }
 
-  private Boolean readFalse() throws JsonParseException {
-    if (length - pos < 4
-        || src.charAt(pos) != 'a'
-        || src.charAt(pos + 1) != 'l'
-        || src.charAt(pos + 2) != 's'
-        || src.charAt(pos + 3) != 'e') {
-      throw reportError("false", src.substring(pos - 1, Math.min(pos + 4, length)), pos - 1);
+  /**
+   * Skip a regular expression literal.
+   */
+  private void skipRegExp() {
+    boolean charClass = false;
+    while (pos < length) {
+      char c = src.charAt(pos++);
+      if (c == '\\') {
+        pos++;
+      } else if (c == '[') {
+        charClass = true;
+      } else if (c == ']') {
+        charClass = false;
+      } else if (c == '/' && !charClass) {
+        return;
+      }
     }
-    pos += 4;
-    return Boolean.FALSE;
   }
 
   /**
-   * Parse a null literal.
+   * Normalize the source of a function using Rhino.
    *
-   * @return A null literal.
-   * @throws JsonParseException If the parsing process fail.
+   * @param function The function's source.
+   * @return The normalized function's source.
    */
-  private Object readNull() throws JsonParseException {
-    if (length - pos < 3
-        || src.charAt(pos) != 'u'
-        || src.charAt(pos + 1) != 'l'
-        || src.charAt(pos + 2) != 'l') {
-      throw reportError("null", src.substring(pos - 1, Math.min(pos + 3, length)), pos - 1);
+  private String normalize(final String function) {
+    final StringBuilder source = new StringBuilder();
+    new Parser().parse("(" + function + ")", filename, 1).visit(new NodeVisitor() {
+      @Override
+      public boolean visit(final AstNode node) {
+        if (node instanceof FunctionNode) {
+          source.append(node.toSource());
+          return false;
+        }
+        return source.length() == 0;
+      }
+    });
+    return source.toString();
+  }
+
+  /**
+   * Check if the input at the given position starts with the given text.
+   *
+   * @param offset The position.
+   * @param value The text.
+   * @return True, if the input starts with the given text.
+   */
+  private boolean regionMatches(final int offset, final String value) {
+    if (length - offset < value.length()) {
+      return false;
     }
-    pos += 3;
-    return null;
+    for (int i = 0; i < value.length(); i++) {
+      if (src.charAt(offset + i) != value.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
-   * Consume any whitespace.
+   * Consume any whitespace (and comments of JavaScript object literals).
    */
   private void consumeWhitespace() {
     while (pos < length) {
@@ -406,6 +930,22 @@ public final class JsonParser {
         case '\n':
           pos += 1;
           break;
+        case '/':
+          if (relaxed && regionMatches(pos, "//")) {
+            while (pos < length && src.charAt(pos) != '\n') {
+              pos++;
+            }
+            break;
+          }
+          if (relaxed && regionMatches(pos, "/*")) {
+            pos += 2;
+            while (pos < length && !regionMatches(pos, "*/")) {
+              pos++;
+            }
+            pos = Math.min(length, pos + 2);
+            break;
+          }
+          return;
         default:
           return;
       }
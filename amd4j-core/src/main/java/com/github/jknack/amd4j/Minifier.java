@@ -20,8 +20,8 @@ package com.github.jknack.amd4j;
 import static org.apache.commons.lang3.Validate.notEmpty;
 import static org.apache.commons.lang3.Validate.notNull;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Minify/Optimize JavaScript code.
@@ -42,14 +42,14 @@ public abstract class Minifier {
   };
 
   /**
-   * The minifiers registry.
+   * The minifiers registry. Minifiers might be registered and used from concurrent builds.
    */
-  private static Map<String, Minifier> registry = new HashMap<String, Minifier>();
+  private static Map<String, Minifier> registry = new ConcurrentHashMap<String, Minifier>();
 
   static {
-    register("none", NONE);
+    registry.put("none", NONE);
 
-    register("white", new WhiteMinifier());
+    registry.put("white", new WhiteMinifier());
   }
 
   /**
@@ -61,6 +61,25 @@ public abstract class Minifier {
    */
   public abstract CharSequence minify(Config config, CharSequence input);
 
+  /**
+   * Minify/Optimize JavaScript code and rewrite the source map of the input, so it maps the
+   * minified output. Minifiers that can report where the code went should override this method.
+   * By default, the source map is cleared (and it won't be written).
+   *
+   * @param config The configuration options.
+   * @param input The JavaScript code.
+   * @param sourceMap The source map of the JavaScript code.
+   * @return A minified output.
+   */
+  public CharSequence minify(final Config config, final CharSequence input,
+      final SourceMap sourceMap) {
+    CharSequence output = minify(config, input);
+    if (output != input) {
+      sourceMap.clear();
+    }
+    return output;
+  }
+
   /**
    * Get a minifier by name.
    *
@@ -81,7 +100,11 @@ public abstract class Minifier {
    *
    * @param name The optimizer/minifier name. Required.
    * @param minifier The optimizer/minifier.
+   * @deprecated The registry is shared by all the builds of the JVM. Use
+   *             {@link Amd4j#with(String, Minifier)} to register a minifier per {@link Amd4j}
+   *             instance.
    */
+  @Deprecated
   public static void register(final String name, final Minifier minifier) {
     notEmpty(name, "The name is required.");
     notNull(minifier, "The minifier is required.");
@@ -21,7 +21,10 @@ import static org.apache.commons.lang3.StringUtils.leftPad;
 import static org.apache.commons.lang3.Validate.notEmpty;
 import static org.apache.commons.lang3.Validate.notNull;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -55,6 +58,16 @@ public class Module implements Iterable<Module> {
    */
   public final ResourceURI uri;
 
+  /**
+   * The file where the module was optimized to or <code>null</code>.
+   */
+  private File outFile;
+
+  /**
+   * The modules optimized into lazy loaded chunks of this module.
+   */
+  private final List<Module> chunks = new ArrayList<Module>();
+
   /**
    * Creates a new {@link Module}.
    *
@@ -68,6 +81,46 @@ public class Module implements Iterable<Module> {
     this.content = notEmpty(content, "The content is required.");
   }
 
+  /**
+   * The file where the module was optimized to. Placeholders like <code>${hash}</code> are
+   * resolved.
+   *
+   * @return The file where the module was optimized to or <code>null</code> if the module wasn't
+   *         optimized to a file.
+   */
+  public File getOutFile() {
+    return outFile;
+  }
+
+  /**
+   * Set the file where the module was optimized to.
+   *
+   * @param outFile The file where the module was optimized to.
+   */
+  void setOutFile(final File outFile) {
+    this.outFile = outFile;
+  }
+
+  /**
+   * The modules (split points) optimized into lazy loaded chunks of this module, see
+   * {@link Config#isSplitNestedDependencies()}. The chunk's file of a module is
+   * {@link #getOutFile()}.
+   *
+   * @return The modules optimized into lazy loaded chunks of this module.
+   */
+  public List<Module> getChunks() {
+    return Collections.unmodifiableList(chunks);
+  }
+
+  /**
+   * Add a module optimized into a lazy loaded chunk of this module.
+   *
+   * @param chunk A module optimized into a lazy loaded chunk of this module.
+   */
+  void addChunk(final Module chunk) {
+    chunks.add(chunk);
+  }
+
   /**
    * Walk through all the module's dependencies.
    *
@@ -150,7 +203,10 @@ public class Module implements Iterable<Module> {
   }
 
   /**
-   * Print a tree of the module. Useful for debugging.
+   * Print a tree of the module. Useful for debugging. The dependencies of a module are printed
+   * once: if the module is found again, it is marked with <code>(*)</code> and their dependencies
+   * are omitted. So, the size of the tree is linear in the number of dependencies and circular
+   * dependencies are printed too.
    *
    * @return Print a tree of the module. Useful for debugging.
    */
@@ -161,6 +217,11 @@ public class Module implements Iterable<Module> {
        */
       StringBuilder buffer = new StringBuilder();
 
+      /**
+       * The printed modules.
+       */
+      Set<Module> printed = new HashSet<Module>();
+
       /**
        * The node's level.
        */
@@ -180,7 +241,12 @@ public class Module implements Iterable<Module> {
       @Override
       public boolean visit(final Module module) {
         buffer.append(leftPad("", level));
-        buffer.append(module.uri).append("\n");
+        buffer.append(module.uri);
+        if (!printed.add(module)) {
+          buffer.append(" (*)\n");
+          return false;
+        }
+        buffer.append("\n");
         level += tabSize;
         return true;
       }
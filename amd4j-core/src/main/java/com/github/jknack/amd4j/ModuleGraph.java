@@ -0,0 +1,641 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import static org.apache.commons.lang3.StringUtils.join;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the module graph of an analyzed module. Modules are numbered in discovery order (a
+ * depth-first walk from the root that follows the dependency order), so every report is
+ * deterministic.
+ * <p>
+ * The strongly connected components are computed with an iterative version of Tarjan's
+ * algorithm, so deep graphs don't overflow the stack. A component with more than one module (or a
+ * module that depends on itself) is a circular dependency.
+ * </p>
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+public class ModuleGraph {
+
+  /**
+   * Chars below this value are encoded as one byte in UTF-8.
+   */
+  private static final int MAX_ONE_BYTE = 0x80;
+
+  /**
+   * Chars below this value are encoded as two bytes in UTF-8.
+   */
+  private static final int MAX_TWO_BYTES = 0x800;
+
+  /**
+   * The root module.
+   */
+  private final Module root;
+
+  /**
+   * The modules in discovery order.
+   */
+  private final List<Module> modules = new ArrayList<Module>();
+
+  /**
+   * The index of each module.
+   */
+  private final Map<Module, Integer> indexes = new HashMap<Module, Integer>();
+
+  /**
+   * The dependencies of each module, as module indexes.
+   */
+  private final int[][] edges;
+
+  /**
+   * The strongly connected components, lazily computed.
+   */
+  private List<List<Module>> components;
+
+  /**
+   * The immediate dominator of each module (the root is its own dominator), lazily computed.
+   */
+  private int[] dominators;
+
+  /**
+   * The size of the dominator subtree of each module, lazily computed.
+   */
+  private long[] retainedSizes;
+
+  /**
+   * Creates a new {@link ModuleGraph}.
+   *
+   * @param root The root module. Required.
+   */
+  public ModuleGraph(final Module root) {
+    this.root = notNull(root, "The root is required.");
+    edges = index(Collections.singletonList(root), modules, indexes);
+  }
+
+  /**
+   * Number the modules reachable from the given roots in discovery order: a depth-first walk that
+   * follows the dependency order.
+   *
+   * @param roots The root modules.
+   * @param modules The list where the modules are added in discovery order.
+   * @param indexes The map where the index of each module is saved.
+   * @return The dependencies of each module, as module indexes.
+   */
+  static int[][] index(final List<Module> roots, final List<Module> modules,
+      final Map<Module, Integer> indexes) {
+    LinkedList<Module> stack = new LinkedList<Module>();
+    for (Module root : roots) {
+      stack.push(root);
+      while (!stack.isEmpty()) {
+        Module module = stack.pop();
+        if (!indexes.containsKey(module)) {
+          indexes.put(module, modules.size());
+          modules.add(module);
+          List<Module> dependencies = module.getDependencies(false);
+          for (int i = dependencies.size() - 1; i >= 0; i--) {
+            stack.push(dependencies.get(i));
+          }
+        }
+      }
+    }
+    int[][] edges = new int[modules.size()][];
+    for (int i = 0; i < edges.length; i++) {
+      List<Module> dependencies = modules.get(i).getDependencies(false);
+      edges[i] = new int[dependencies.size()];
+      for (int j = 0; j < edges[i].length; j++) {
+        edges[i][j] = indexes.get(dependencies.get(j));
+      }
+    }
+    return edges;
+  }
+
+  /**
+   * The root module.
+   *
+   * @return The root module.
+   */
+  public Module getRoot() {
+    return root;
+  }
+
+  /**
+   * The modules of the graph in discovery order.
+   *
+   * @return The modules of the graph in discovery order.
+   */
+  public List<Module> getModules() {
+    return Collections.unmodifiableList(modules);
+  }
+
+  /**
+   * The strongly connected components of the graph. Components are listed in reverse topological
+   * order (a component is listed after all the components it depends on) and the modules of a
+   * component are listed in discovery order.
+   *
+   * @return The strongly connected components of the graph.
+   */
+  public List<List<Module>> getComponents() {
+    if (components == null) {
+      components = Collections.unmodifiableList(tarjan());
+    }
+    return components;
+  }
+
+  /**
+   * True, if there is at least one circular dependency.
+   *
+   * @return True, if there is at least one circular dependency.
+   */
+  public boolean hasCycles() {
+    for (List<Module> component : getComponents()) {
+      if (isCyclic(component)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Report one cycle per cyclic component: the shortest path from the first module of the
+   * component back to itself, like: <code>[a, b, c, a]</code>.
+   *
+   * @return The circular dependencies of the graph.
+   */
+  public List<List<Module>> getCycles() {
+    List<List<Module>> cycles = new ArrayList<List<Module>>();
+    for (List<Module> component : getComponents()) {
+      if (isCyclic(component)) {
+        cycles.add(cycle(component));
+      }
+    }
+    return cycles;
+  }
+
+  /**
+   * The immediate dominator of a module: the closest module that is part of every dependency path
+   * from the root to the module. The dominators are computed with the iterative algorithm of
+   * Cooper, Harvey and Kennedy.
+   *
+   * @param module A module of the graph. Required.
+   * @return The immediate dominator of the module or null for the root module.
+   */
+  public Module getDominator(final Module module) {
+    int node = indexOf(module);
+    return node == 0 ? null : modules.get(dominators()[node]);
+  }
+
+  /**
+   * The module and the modules it dominates: they are loaded only through the module, so they
+   * can be deferred together with it.
+   *
+   * @param module A module of the graph. Required.
+   * @return The dominator subtree of the module in discovery order.
+   */
+  public List<Module> getDominated(final Module module) {
+    int node = indexOf(module);
+    int[] dominators = dominators();
+    // a module is visited after its dominator, so one pass in discovery order is enough
+    boolean[] dominated = new boolean[modules.size()];
+    dominated[node] = true;
+    List<Module> result = new ArrayList<Module>();
+    result.add(module);
+    for (int i = node + 1; i < dominated.length; i++) {
+      if (dominated[dominators[i]]) {
+        dominated[i] = true;
+        result.add(modules.get(i));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The size (in UTF-8 bytes) of the module and the modules it dominates. It is the size that
+   * is removed from the output if the module is loaded lazily.
+   *
+   * @param module A module of the graph. Required.
+   * @return The size of the dominator subtree of the module.
+   */
+  public long getRetainedSize(final Module module) {
+    int node = indexOf(module);
+    dominators();
+    return retainedSizes[node];
+  }
+
+  /**
+   * Find the candidates for lazy loading: the modules (except for the root) that have a single
+   * dependent, so their dominator subtree is owned by a single dependency. Candidates are sorted
+   * by retained size, the largest first; the dependent of a candidate is its dominator.
+   *
+   * @return The candidates for lazy loading.
+   */
+  public List<Module> getSplitPoints() {
+    int[] dependents = new int[modules.size()];
+    for (int[] dependencies : edges) {
+      for (int dependency : dependencies) {
+        dependents[dependency]++;
+      }
+    }
+    dominators();
+    List<Integer> candidates = new ArrayList<Integer>();
+    for (int i = 1; i < dependents.length; i++) {
+      if (dependents[i] == 1) {
+        candidates.add(i);
+      }
+    }
+    Collections.sort(candidates, new Comparator<Integer>() {
+      @Override
+      public int compare(final Integer left, final Integer right) {
+        long diff = retainedSizes[right] - retainedSizes[left];
+        return diff == 0 ? left - right : diff > 0 ? 1 : -1;
+      }
+    });
+    List<Module> result = new ArrayList<Module>(candidates.size());
+    for (int candidate : candidates) {
+      result.add(modules.get(candidate));
+    }
+    return result;
+  }
+
+  /**
+   * Export the graph in the Graphviz DOT format. Every module is written once, labeled with its
+   * name and size (in UTF-8 bytes), so the output is linear in the number of dependencies.
+   *
+   * @return A DOT digraph.
+   */
+  public String toDot() {
+    StringBuilder buffer = new StringBuilder("digraph ");
+    SourceMap.quote(buffer, root.name);
+    buffer.append(" {\n");
+    for (int i = 0; i < edges.length; i++) {
+      Module module = modules.get(i);
+      buffer.append("  n").append(i).append(" [label=");
+      SourceMap.quote(buffer, module.name + "\n" + size(module.content) + " bytes");
+      buffer.append("];\n");
+    }
+    for (int i = 0; i < edges.length; i++) {
+      for (int dependency : edges[i]) {
+        buffer.append("  n").append(i).append(" -> n").append(dependency).append(";\n");
+      }
+    }
+    return buffer.append("}\n").toString();
+  }
+
+  /**
+   * Export the graph as a JSON adjacency list. Modules are listed once in discovery order (the
+   * root module is the first one) and dependencies are module indexes, like:
+   *
+   * <pre>
+   * {"modules": [
+   *   {"name": "a", "uri": "/a.js", "size": 10, "dependencies": [1]},
+   *   {"name": "b", "uri": "/b.js", "size": 20, "dependencies": []}
+   * ]}
+   * </pre>
+   *
+   * The size of a module is its length in UTF-8 bytes.
+   *
+   * @return A JSON adjacency list.
+   */
+  public String toJson() {
+    StringBuilder buffer = new StringBuilder("{\"modules\": [");
+    String sep = "\n  ";
+    for (int i = 0; i < edges.length; i++) {
+      Module module = modules.get(i);
+      buffer.append(sep).append("{\"name\": ");
+      SourceMap.quote(buffer, module.name);
+      buffer.append(", \"uri\": ");
+      SourceMap.quote(buffer, module.uri.toString());
+      buffer.append(", \"size\": ").append(size(module.content))
+          .append(", \"dependencies\": [");
+      for (int j = 0; j < edges[i].length; j++) {
+        if (j > 0) {
+          buffer.append(", ");
+        }
+        buffer.append(edges[i][j]);
+      }
+      buffer.append("]}");
+      sep = ",\n  ";
+    }
+    return buffer.append("\n]}\n").toString();
+  }
+
+  /**
+   * Print a list of cycles, one per line, like: <code>a -&gt; b -&gt; a</code>.
+   *
+   * @param cycles The cycles to print. Required.
+   * @return A human readable report.
+   */
+  public static String toString(final List<List<Module>> cycles) {
+    notNull(cycles, "The cycles are required.");
+    StringBuilder buffer = new StringBuilder();
+    for (List<Module> cycle : cycles) {
+      buffer.append("  ").append(join(cycle, " -> ")).append("\n");
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * The index of a module.
+   *
+   * @param module A module of the graph.
+   * @return The index of the module.
+   */
+  private int indexOf(final Module module) {
+    notNull(module, "The module is required.");
+    Integer index = indexes.get(module);
+    return notNull(index, "Unknown module: %s", module);
+  }
+
+  /**
+   * Compute the immediate dominators (and the retained sizes) with the algorithm of Cooper,
+   * Harvey and Kennedy: "A Simple, Fast Dominance Algorithm". Nodes are processed in reverse
+   * postorder until there are no changes.
+   *
+   * @return The immediate dominator of each module.
+   */
+  private int[] dominators() {
+    if (dominators != null) {
+      return dominators;
+    }
+    int size = modules.size();
+    // iterative postorder from the root
+    int[] postorder = new int[size];
+    int[] order = new int[size];
+    int[] cursor = new int[size];
+    boolean[] visited = new boolean[size];
+    int[] calls = new int[size];
+    int cp = 0;
+    int counter = 0;
+    calls[cp++] = 0;
+    visited[0] = true;
+    while (cp > 0) {
+      int v = calls[cp - 1];
+      if (cursor[v] < edges[v].length) {
+        int w = edges[v][cursor[v]++];
+        if (!visited[w]) {
+          visited[w] = true;
+          calls[cp++] = w;
+        }
+      } else {
+        cp--;
+        postorder[v] = counter;
+        order[counter++] = v;
+      }
+    }
+    List<List<Integer>> predecessors = new ArrayList<List<Integer>>(size);
+    for (int i = 0; i < size; i++) {
+      predecessors.add(new ArrayList<Integer>());
+    }
+    for (int i = 0; i < size; i++) {
+      for (int dependency : edges[i]) {
+        predecessors.get(dependency).add(i);
+      }
+    }
+    int[] idom = new int[size];
+    Arrays.fill(idom, -1);
+    idom[0] = 0;
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      // reverse postorder, skip the root (the last one in postorder)
+      for (int i = size - 2; i >= 0; i--) {
+        int v = order[i];
+        int dominator = -1;
+        for (int p : predecessors.get(v)) {
+          if (idom[p] >= 0) {
+            dominator = dominator < 0 ? p : intersect(idom, postorder, p, dominator);
+          }
+        }
+        if (idom[v] != dominator) {
+          idom[v] = dominator;
+          changed = true;
+        }
+      }
+    }
+    long[] retained = new long[size];
+    for (int i = 0; i < size; i++) {
+      retained[order[i]] += size(modules.get(order[i]).content);
+      if (order[i] != 0) {
+        // children come first in postorder
+        retained[idom[order[i]]] += retained[order[i]];
+      }
+    }
+    retainedSizes = retained;
+    dominators = idom;
+    return dominators;
+  }
+
+  /**
+   * Find the closest common dominator of two nodes.
+   *
+   * @param idom The immediate dominators found so far.
+   * @param postorder The postorder number of each node.
+   * @param left A node.
+   * @param right A node.
+   * @return The closest common dominator.
+   */
+  private static int intersect(final int[] idom, final int[] postorder, final int left,
+      final int right) {
+    int finger1 = left;
+    int finger2 = right;
+    while (finger1 != finger2) {
+      while (postorder[finger1] < postorder[finger2]) {
+        finger1 = idom[finger1];
+      }
+      while (postorder[finger2] < postorder[finger1]) {
+        finger2 = idom[finger2];
+      }
+    }
+    return finger1;
+  }
+
+  /**
+   * True, if the component has a circular dependency.
+   *
+   * @param component A strongly connected component.
+   * @return True, if the component has a circular dependency.
+   */
+  private boolean isCyclic(final List<Module> component) {
+    if (component.size() > 1) {
+      return true;
+    }
+    int node = indexes.get(component.get(0));
+    for (int dependency : edges[node]) {
+      if (dependency == node) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Find the shortest cycle (breadth first) that starts and ends at the first module of a
+   * component.
+   *
+   * @param component A cyclic component.
+   * @return A cycle path.
+   */
+  private List<Module> cycle(final List<Module> component) {
+    int start = indexes.get(component.get(0));
+    boolean[] member = new boolean[modules.size()];
+    for (Module module : component) {
+      member[indexes.get(module)] = true;
+    }
+    int[] parent = new int[modules.size()];
+    Arrays.fill(parent, -1);
+    LinkedList<Integer> queue = new LinkedList<Integer>();
+    queue.add(start);
+    int last = -1;
+    while (last < 0 && !queue.isEmpty()) {
+      int node = queue.removeFirst();
+      for (int dependency : edges[node]) {
+        if (dependency == start) {
+          last = node;
+          break;
+        }
+        if (member[dependency] && parent[dependency] < 0) {
+          parent[dependency] = node;
+          queue.add(dependency);
+        }
+      }
+    }
+    LinkedList<Module> path = new LinkedList<Module>();
+    path.add(modules.get(start));
+    for (int node = last; node != start; node = parent[node]) {
+      path.addFirst(modules.get(node));
+    }
+    path.addFirst(modules.get(start));
+    return path;
+  }
+
+  /**
+   * The length of a string in UTF-8 bytes, without encoding it.
+   *
+   * @param content The content.
+   * @return The length of the content in UTF-8 bytes.
+   */
+  static int size(final String content) {
+    int size = 0;
+    for (int i = 0; i < content.length(); i++) {
+      char ch = content.charAt(i);
+      if (ch < MAX_ONE_BYTE) {
+        size++;
+      } else if (ch < MAX_TWO_BYTES) {
+        size += 2;
+      } else if (Character.isHighSurrogate(ch) && i + 1 < content.length()
+          && Character.isLowSurrogate(content.charAt(i + 1))) {
+        size += 4;
+        i++;
+      } else {
+        size += 3;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * The strongly connected components of the graph, see {@link #components(int[][])}.
+   *
+   * @return The strongly connected components.
+   */
+  private List<List<Module>> tarjan() {
+    List<List<Module>> result = new ArrayList<List<Module>>();
+    for (int[] members : components(edges)) {
+      List<Module> component = new ArrayList<Module>(members.length);
+      for (int member : members) {
+        component.add(modules.get(member));
+      }
+      result.add(component);
+    }
+    return result;
+  }
+
+  /**
+   * An iterative version of Tarjan's strongly connected components algorithm.
+   *
+   * @param edges The dependencies of each node, as node indexes.
+   * @return The strongly connected components in reverse topological order, as sorted node
+   *         indexes.
+   */
+  static List<int[]> components(final int[][] edges) {
+    int size = edges.length;
+    int[] index = new int[size];
+    int[] low = new int[size];
+    int[] cursor = new int[size];
+    boolean[] onStack = new boolean[size];
+    int[] stack = new int[size];
+    int[] calls = new int[size];
+    Arrays.fill(index, -1);
+    int sp = 0;
+    int counter = 0;
+    List<int[]> result = new ArrayList<int[]>();
+    for (int node = 0; node < size; node++) {
+      if (index[node] >= 0) {
+        continue;
+      }
+      int cp = 0;
+      calls[cp++] = node;
+      index[node] = counter;
+      low[node] = counter++;
+      stack[sp++] = node;
+      onStack[node] = true;
+      while (cp > 0) {
+        int v = calls[cp - 1];
+        if (cursor[v] < edges[v].length) {
+          int w = edges[v][cursor[v]++];
+          if (index[w] < 0) {
+            index[w] = counter;
+            low[w] = counter++;
+            stack[sp++] = w;
+            onStack[w] = true;
+            calls[cp++] = w;
+          } else if (onStack[w]) {
+            low[v] = Math.min(low[v], index[w]);
+          }
+        } else {
+          cp--;
+          if (low[v] == index[v]) {
+            int top = sp;
+            do {
+              onStack[stack[--sp]] = false;
+            } while (stack[sp] != v);
+            int[] members = Arrays.copyOfRange(stack, sp, top);
+            Arrays.sort(members);
+            result.add(members);
+          }
+          if (cp > 0) {
+            int u = calls[cp - 1];
+            low[u] = Math.min(low[u], low[v]);
+          }
+        }
+      }
+    }
+    return result;
+  }
+}
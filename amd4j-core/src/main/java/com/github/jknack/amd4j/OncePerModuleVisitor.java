@@ -43,6 +43,13 @@ public abstract class OncePerModuleVisitor<Out> extends ModuleVisitor<Out> {
     return visit;
   }
 
+  /**
+   * Forget the visited modules, so the visitor can walk another module graph.
+   */
+  protected void reset() {
+    visited.clear();
+  }
+
   /**
    * Guarded visit call.
    * @param module The candidate module.
@@ -19,12 +19,13 @@ package com.github.jknack.amd4j;
 
 import static org.apache.commons.lang3.Validate.notNull;
 
-import java.io.PrintWriter;
-import java.io.Writer;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-
-import org.apache.commons.io.IOUtils;
+import java.util.Set;
 
 /**
  * Merge a module and module's dependencies into a single file.
@@ -44,11 +45,41 @@ public class Optimizer extends OncePerModuleVisitor<CharSequence> {
    */
   private List<Transformer> transformers = new ArrayList<Transformer>();
 
+  /**
+   * The transform cache or null.
+   */
+  private TransformCache cache;
+
+  /**
+   * The minifier or null for the minifier of the configuration options.
+   */
+  private Minifier minifier;
+
+  /**
+   * The modules that must not be optimized, because they are loaded already.
+   */
+  private Set<Module> excludes = Collections.emptySet();
+
+  /**
+   * The names of the optimized modules.
+   */
+  private Set<String> names = new LinkedHashSet<String>();
+
   /**
    * The writer.
    */
   private StringBuilder buffer;
 
+  /**
+   * The source map of the buffer or null if source maps are off.
+   */
+  private SourceMap sourceMap;
+
+  /**
+   * The current line of the buffer.
+   */
+  private int line;
+
   /**
    * Creates a new {@link Optimizer}.
    *
@@ -56,7 +87,34 @@ public class Optimizer extends OncePerModuleVisitor<CharSequence> {
    * @param transformers The list of additional transformer to use. Required.
    */
   public Optimizer(final Config config, final List<Transformer> transformers) {
+    this(config, transformers, null);
+  }
+
+  /**
+   * Creates a new {@link Optimizer}.
+   *
+   * @param config The configuration options. Required.
+   * @param transformers The list of additional transformer to use. Required.
+   * @param cache The transform cache. Optional.
+   */
+  public Optimizer(final Config config, final List<Transformer> transformers,
+      final TransformCache cache) {
+    this(config, transformers, cache, null);
+  }
+
+  /**
+   * Creates a new {@link Optimizer}.
+   *
+   * @param config The configuration options. Required.
+   * @param transformers The list of additional transformer to use. Required.
+   * @param cache The transform cache. Optional.
+   * @param minifier The minifier to use. Optional, default is: {@link Config#getOptimize()}.
+   */
+  public Optimizer(final Config config, final List<Transformer> transformers,
+      final TransformCache cache, final Minifier minifier) {
     this.config = notNull(config, "The config is required.");
+    this.cache = cache;
+    this.minifier = minifier;
     notNull(transformers, "The transformers is required.");
     this.transformers.addAll(transformers);
     this.transformers.add(new SemicolonAppenderPlugin());
@@ -65,31 +123,155 @@ public class Optimizer extends OncePerModuleVisitor<CharSequence> {
 
   @Override
   public CharSequence walk(final Module module) {
+    return walk(Collections.singletonList(module), Collections.<Module> emptySet());
+  }
+
+  /**
+   * Merge the given modules and their dependencies into a single output, except for the excluded
+   * modules (and their dependencies).
+   *
+   * @param modules The modules to optimize.
+   * @param excludes The modules that must not be optimized, because they are loaded already.
+   * @return The optimized modules.
+   */
+  CharSequence walk(final List<Module> modules, final Set<Module> excludes) {
+    reset();
+    this.excludes = excludes;
+    names.clear();
     buffer = new StringBuilder();
-    PrintWriter writer = null;
-    try {
+    line = 0;
+    sourceMap = config.isGenerateSourceMaps() && config.getOutFile() != null
+        ? new SourceMap() : null;
+    for (Module module : modules) {
       module.traverse(this);
-      Writer out = config.getOut();
-      Minifier minifier = config.getOptimize();
-      CharSequence minified = minifier.minify(config, buffer);
-      if (out != null) {
-        writer = new PrintWriter(out);
-        writer.append(minified);
+    }
+    Minifier minifier = this.minifier == null ? config.getOptimize() : this.minifier;
+    CharSequence minified = sourceMap == null
+        ? minifier.minify(config, buffer)
+        : minifier.minify(config, buffer, sourceMap);
+    try {
+      File file = BundleWriter.write(config, minified, sourceMap);
+      for (Module module : modules) {
+        module.setOutFile(file);
       }
-      return minified;
-    } finally {
-      IOUtils.closeQuietly(writer);
+      if (file != null && config.getBundlesConfig() != null) {
+        BundleWriter.bundles(config.getBundlesConfig(), config.getOutFile(), file, names);
+      }
+    } catch (IOException ex) {
+      throw new AmdException(modules.get(0).name, ex);
+    }
+    return minified;
+  }
+
+  @Override
+  protected boolean doVisit(final Module module) {
+    if (excludes.contains(module)) {
+      return false;
     }
+    names.add(module.name);
+    return true;
   }
 
   @Override
   public void endvisit(final Module module) {
-    StringBuilder content = new StringBuilder(module.content);
-    for (Transformer transformer : transformers) {
-      if (transformer.apply(module.uri)) {
-        content = transformer.transform(config, module.name, content);
+    String key = cache == null ? null : TransformCache.key(config, module, transformers);
+    CharSequence content = key == null ? null : cache.get(key);
+    if (content == null) {
+      StringBuilder transformed = new StringBuilder(module.content);
+      for (Transformer transformer : transformers) {
+        if (transformer.apply(module.uri)) {
+          transformed = transformer.transform(config, module.name, transformed);
+        }
+      }
+      if (key != null) {
+        cache.put(key, transformed.toString());
+      }
+      content = transformed;
+    }
+    buffer.append("\n");
+    line++;
+    if (sourceMap != null) {
+      map(module, content);
+    }
+    buffer.append(content);
+    line += lines(content) - 1;
+  }
+
+  /**
+   * Map the lines of the transformed module to the original lines. Transformers don't add or
+   * remove lines, except for text resources (all the text goes in the first line) and shims
+   * (lines are added at the end). Inside a line, the text inserted or removed by a transformer
+   * is skipped, so the rest of the line is mapped to the original column.
+   *
+   * @param module The original module.
+   * @param content The transformed module.
+   */
+  private void map(final Module module, final CharSequence content) {
+    String path = module.uri.getPath();
+    int source = sourceMap.addSource(path.startsWith("/") ? path.substring(1) : path,
+        module.content);
+    String original = module.content;
+    if (lines(content) < lines(original)) {
+      sourceMap.addMapping(line, 0, source, 0, 0);
+      return;
+    }
+    int start = 0;
+    int originalStart = 0;
+    for (int i = 0; originalStart <= original.length(); i++) {
+      int end = lineEnd(content, start);
+      int originalEnd = lineEnd(original, originalStart);
+      sourceMap.addMapping(line + i, 0, source, i, 0);
+      int length = end - start;
+      int originalLength = originalEnd - originalStart;
+      int max = Math.min(length, originalLength);
+      int prefix = 0;
+      while (prefix < max && content.charAt(start + prefix)
+          == original.charAt(originalStart + prefix)) {
+        prefix++;
+      }
+      if (prefix < originalLength) {
+        int suffix = 0;
+        while (suffix < max - prefix && content.charAt(end - suffix - 1)
+            == original.charAt(originalEnd - suffix - 1)) {
+          suffix++;
+        }
+        if (suffix > 0 && length != originalLength) {
+          sourceMap.addMapping(line + i, length - suffix, source, i, originalLength - suffix);
+        }
+      }
+      start = end + 1;
+      originalStart = originalEnd + 1;
+    }
+  }
+
+  /**
+   * Find the end of the line that starts at the given offset.
+   *
+   * @param text The text.
+   * @param start The line's start.
+   * @return The offset of the new line character or the text's length.
+   */
+  private static int lineEnd(final CharSequence text, final int start) {
+    int end = start;
+    while (end < text.length() && text.charAt(end) != '\n') {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Count the lines of the given text.
+   *
+   * @param text The text.
+   * @return The number of lines.
+   */
+  private static int lines(final CharSequence text) {
+    int lines = 1;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        lines++;
       }
     }
-    buffer.append("\n").append(content);
+    return lines;
   }
 }
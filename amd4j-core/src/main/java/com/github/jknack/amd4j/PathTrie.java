@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * A trie of module paths, where each node is a path segment. It finds the longest path prefix of
+ * a module's id in time proportional to the number of segments of the id.
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+final class PathTrie {
+
+  /**
+   * A longest prefix match.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  static final class Match {
+
+    /**
+     * The value of the matching prefix.
+     */
+    final Object value;
+
+    /**
+     * The end of the matching prefix in the module's id.
+     */
+    final int end;
+
+    /**
+     * Creates a new {@link Match}.
+     *
+     * @param value The value of the matching prefix.
+     * @param end The end of the matching prefix in the module's id.
+     */
+    private Match(final Object value, final int end) {
+      this.value = value;
+      this.end = end;
+    }
+  }
+
+  /**
+   * A trie's node.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  private static final class Node {
+
+    /**
+     * The child nodes by segment or null.
+     */
+    private Map<String, Node> children;
+
+    /**
+     * The node's value or null if there is no path with this prefix.
+     */
+    private Object value;
+  }
+
+  /**
+   * The root node.
+   */
+  private final Node root = new Node();
+
+  /**
+   * Creates a new {@link PathTrie}.
+   *
+   * @param paths The module's paths.
+   */
+  PathTrie(final Map<String, Object> paths) {
+    for (Entry<String, Object> path : paths.entrySet()) {
+      put(path.getKey(), path.getValue());
+    }
+  }
+
+  /**
+   * Add a path.
+   *
+   * @param prefix The module's prefix.
+   * @param value The path value.
+   */
+  private void put(final String prefix, final Object value) {
+    Node node = root;
+    int start = 0;
+    while (start <= prefix.length()) {
+      int end = segmentEnd(prefix, start);
+      if (end > start) {
+        String segment = prefix.substring(start, end);
+        if (node.children == null) {
+          node.children = new HashMap<String, Node>();
+        }
+        Node child = node.children.get(segment);
+        if (child == null) {
+          child = new Node();
+          node.children.put(segment, child);
+        }
+        node = child;
+      }
+      start = end + 1;
+    }
+    if (node != root) {
+      node.value = value;
+    }
+  }
+
+  /**
+   * Find the longest path that is a prefix of the given module's id. Prefixes match whole
+   * segments only, so <code>vendor</code> matches <code>vendor/foo</code> but not
+   * <code>vendors</code>.
+   *
+   * @param id The module's id.
+   * @return The longest prefix match or null.
+   */
+  Match match(final String id) {
+    Node node = root;
+    Match match = null;
+    int start = 0;
+    while (start <= id.length() && node.children != null) {
+      int end = segmentEnd(id, start);
+      if (end > start) {
+        node = node.children.get(id.substring(start, end));
+        if (node == null) {
+          break;
+        }
+        if (node.value != null) {
+          match = new Match(node.value, end);
+        }
+      }
+      start = end + 1;
+    }
+    return match;
+  }
+
+  /**
+   * Find the end of the segment that starts at the given position.
+   *
+   * @param path The path.
+   * @param start The segment's start.
+   * @return The end of the segment.
+   */
+  private static int segmentEnd(final String path, final int start) {
+    int end = path.indexOf('/', start);
+    return end < 0 ? path.length() : end;
+  }
+}
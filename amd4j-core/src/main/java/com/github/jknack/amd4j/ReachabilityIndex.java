@@ -0,0 +1,259 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import static org.apache.commons.lang3.Validate.notEmpty;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reachability index of the module graphs of one or more entries (analyzed modules). It answers
+ * questions like: "what are the transitive dependencies of a module?", "which modules include a
+ * module?" or "which entries include a module?" without walking the graph.
+ * <p>
+ * The index is computed once: the graph is condensed into its strongly connected components (the
+ * modules of a circular dependency reach exactly the same modules), then the transitive closure of
+ * each component is computed in (reverse) topological order as a {@link BitSet} of module
+ * indexes. Modules are numbered like in {@link ModuleGraph}, so results are listed in discovery
+ * order. A {@link #reaches(Module, Module)} query is O(1) and a transitive dependency set is
+ * O(n/64).
+ * </p>
+ * A module reaches itself, like in {@link Module#getDependencies(boolean)}.
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+public class ReachabilityIndex {
+
+  /**
+   * The entries.
+   */
+  private final List<Module> entries;
+
+  /**
+   * The modules in discovery order.
+   */
+  private final List<Module> modules = new ArrayList<Module>();
+
+  /**
+   * The index of each module.
+   */
+  private final Map<Module, Integer> indexes = new HashMap<Module, Integer>();
+
+  /**
+   * The component of each module.
+   */
+  private final int[] components;
+
+  /**
+   * The modules reachable from each component.
+   */
+  private final BitSet[] dependencies;
+
+  /**
+   * The modules that reach each component.
+   */
+  private final BitSet[] dependents;
+
+  /**
+   * Creates a new {@link ReachabilityIndex}.
+   *
+   * @param entries The entries. Required.
+   */
+  public ReachabilityIndex(final Module... entries) {
+    this(Arrays.asList(notEmpty(entries, "The entries are required.")));
+  }
+
+  /**
+   * Creates a new {@link ReachabilityIndex}.
+   *
+   * @param entries The entries. Required.
+   */
+  public ReachabilityIndex(final Collection<Module> entries) {
+    this.entries = Collections.unmodifiableList(new ArrayList<Module>(
+        notEmpty(entries, "The entries are required.")));
+    int[][] edges = ModuleGraph.index(this.entries, modules, indexes);
+    List<int[]> condensation = ModuleGraph.components(edges);
+    int size = condensation.size();
+    components = new int[modules.size()];
+    for (int c = 0; c < size; c++) {
+      for (int member : condensation.get(c)) {
+        components[member] = c;
+      }
+    }
+    // components are in reverse topological order: dependencies come first
+    dependencies = new BitSet[size];
+    for (int c = 0; c < size; c++) {
+      BitSet closure = members(condensation.get(c));
+      for (int member : condensation.get(c)) {
+        for (int dependency : edges[member]) {
+          int d = components[dependency];
+          if (d != c) {
+            closure.or(dependencies[d]);
+          }
+        }
+      }
+      dependencies[c] = closure;
+    }
+    // the transposed graph, in topological order: dependents come first
+    dependents = new BitSet[size];
+    for (int c = size - 1; c >= 0; c--) {
+      if (dependents[c] == null) {
+        dependents[c] = members(condensation.get(c));
+      }
+      for (int member : condensation.get(c)) {
+        for (int dependency : edges[member]) {
+          int d = components[dependency];
+          if (d != c) {
+            if (dependents[d] == null) {
+              dependents[d] = members(condensation.get(d));
+            }
+            dependents[d].or(dependents[c]);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * The entries of the index.
+   *
+   * @return The entries of the index.
+   */
+  public List<Module> getEntries() {
+    return entries;
+  }
+
+  /**
+   * The modules of the index in discovery order.
+   *
+   * @return The modules of the index in discovery order.
+   */
+  public List<Module> getModules() {
+    return Collections.unmodifiableList(modules);
+  }
+
+  /**
+   * True, if the module is part of the graph of an entry.
+   *
+   * @param module The module. Required.
+   * @return True, if the module is part of the graph of an entry.
+   */
+  public boolean contains(final Module module) {
+    return indexes.containsKey(notNull(module, "The module is required."));
+  }
+
+  /**
+   * True, if the <code>to</code> module is a (transitive) dependency of the <code>from</code>
+   * module.
+   *
+   * @param from A module of the index. Required.
+   * @param to A module of the index. Required.
+   * @return True, if the <code>to</code> module is a (transitive) dependency of the
+   *         <code>from</code> module.
+   */
+  public boolean reaches(final Module from, final Module to) {
+    return dependencies[components[indexOf(from)]].get(indexOf(to));
+  }
+
+  /**
+   * The module and its transitive dependencies, like {@link Module#getDependencies(boolean)}.
+   *
+   * @param module A module of the index. Required.
+   * @return The module and its transitive dependencies in discovery order.
+   */
+  public List<Module> getDependencies(final Module module) {
+    return modules(dependencies[components[indexOf(module)]]);
+  }
+
+  /**
+   * The module and all the modules that depend on it (transitively): the modules that include the
+   * module in their output.
+   *
+   * @param module A module of the index. Required.
+   * @return The module and the modules that depend on it in discovery order.
+   */
+  public List<Module> getDependents(final Module module) {
+    return modules(dependents[components[indexOf(module)]]);
+  }
+
+  /**
+   * The entries that include the module in their output.
+   *
+   * @param module A module of the index. Required.
+   * @return The entries that include the module, in the order of the entries.
+   */
+  public List<Module> getEntries(final Module module) {
+    BitSet dependents = this.dependents[components[indexOf(module)]];
+    List<Module> result = new ArrayList<Module>();
+    for (Module entry : entries) {
+      if (dependents.get(indexes.get(entry))) {
+        result.add(entry);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The index of a module.
+   *
+   * @param module A module of the index.
+   * @return The index of the module.
+   */
+  private int indexOf(final Module module) {
+    notNull(module, "The module is required.");
+    Integer index = indexes.get(module);
+    return notNull(index, "Unknown module: %s", module);
+  }
+
+  /**
+   * Creates a bit set with the members of a component.
+   *
+   * @param members The members of a component.
+   * @return A bit set with the members of a component.
+   */
+  private BitSet members(final int[] members) {
+    BitSet bits = new BitSet(modules.size());
+    for (int member : members) {
+      bits.set(member);
+    }
+    return bits;
+  }
+
+  /**
+   * Convert a bit set to a list of modules.
+   *
+   * @param bits The module indexes.
+   * @return The modules in discovery order.
+   */
+  private List<Module> modules(final BitSet bits) {
+    List<Module> result = new ArrayList<Module>(bits.cardinality());
+    for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+      result.add(modules.get(i));
+    }
+    return result;
+  }
+}
@@ -21,30 +21,104 @@ import static org.apache.commons.lang3.Validate.notEmpty;
 import static org.apache.commons.lang3.Validate.notNull;
 
 import java.net.URI;
-
-import org.apache.commons.lang3.builder.EqualsBuilder;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * Resource location.
+ * Resource location. Resource locations are immutable: the hash code is computed once, so they
+ * are cheap keys for maps and sets. Use a {@link Pool} to get one canonical instance per
+ * location.
  *
  * @author edgar.espina
  * @since 0.3.0
  */
 public final class ResourceURI {
 
+  /**
+   * A build-scoped pool of canonical {@link ResourceURI}. Equal locations are represented by the
+   * same instance, so they are compared by identity. The last normalized base url is cached too.
+   * A pool isn't thread-safe, it should be used by one build at a time.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  public static final class Pool {
+
+    /**
+     * The canonical resource locations.
+     */
+    private final Map<String, ResourceURI> uris = new HashMap<String, ResourceURI>();
+
+    /**
+     * The last base url.
+     */
+    private String baseUrl;
+
+    /**
+     * The last normalized base url.
+     */
+    private String normBaseUrl;
+
+    /**
+     * Creates or reuse a {@link ResourceURI}.
+     *
+     * @param baseUrl The base url.
+     * @param path The dependency's path. It might be prefixed with: <code>prefix!</code> where
+     *        <code>prefix</code> is usually a plugin.
+     * @return A canonical {@link ResourceURI}.
+     */
+    public ResourceURI create(final String baseUrl, final String path) {
+      notEmpty(baseUrl, "The baseUrl is required.");
+      if (!baseUrl.equals(this.baseUrl)) {
+        this.normBaseUrl = normalize(baseUrl);
+        this.baseUrl = baseUrl;
+      }
+      return create(resolve(normBaseUrl, path));
+    }
+
+    /**
+     * Creates or reuse a {@link ResourceURI}.
+     *
+     * @param path The dependency's path. It might be preffixed with: <code>schema!</code> where
+     *        <code>schema</code> is usually a plugin.
+     * @return A canonical {@link ResourceURI}.
+     */
+    public ResourceURI create(final String path) {
+      ResourceURI uri = uris.get(path);
+      if (uri == null) {
+        uri = ResourceURI.create(path);
+        uris.put(path, uri);
+      }
+      return uri;
+    }
+
+    /**
+     * The number of canonical resource locations.
+     *
+     * @return The number of canonical resource locations.
+     */
+    public int size() {
+      return uris.size();
+    }
+  }
+
   /** Default path separator. */
   private static final String SEPARATOR = "/";
 
   /**
    * The resource path. Required.
    */
-  private String path;
+  private final String path;
 
   /**
    * The resource prefix. Optional.
    */
-  private String prefix;
+  private final String prefix;
+
+  /**
+   * The hash code.
+   */
+  private final int hash;
 
   /**
    * Creates a new {@link ResourceURI}.
@@ -55,6 +129,7 @@ public final class ResourceURI {
   private ResourceURI(final String prefix, final String path) {
     this.prefix = prefix;
     this.path = notNull(path, "The path is required.");
+    this.hash = (prefix == null ? 0 : prefix.hashCode()) * 31 + path.hashCode();
   }
 
   /**
@@ -77,16 +152,20 @@ public final class ResourceURI {
 
   @Override
   public boolean equals(final Object obj) {
+    if (this == obj) {
+      return true;
+    }
     if (obj instanceof ResourceURI) {
       ResourceURI that = (ResourceURI) obj;
-      return new EqualsBuilder().append(prefix, that.prefix).append(path, that.path).isEquals();
+      return hash == that.hash && path.equals(that.path)
+          && (prefix == null ? that.prefix == null : prefix.equals(that.prefix));
     }
     return false;
   }
 
   @Override
   public int hashCode() {
-    return new HashCodeBuilder().append(prefix).append(path).hashCode();
+    return hash;
   }
 
   @Override
@@ -104,6 +183,16 @@ public final class ResourceURI {
    */
   public static ResourceURI create(final String baseUrl, final String path) {
     notEmpty(baseUrl, "The baseUrl is required.");
+    return create(resolve(normalize(baseUrl), path));
+  }
+
+  /**
+   * Normalize a base url, it always starts and ends with a <code>/</code>.
+   *
+   * @param baseUrl The base url.
+   * @return A normalized base url.
+   */
+  private static String normalize(final String baseUrl) {
     String normBaseUrl = baseUrl;
     if (".".equals(normBaseUrl)) {
       normBaseUrl = SEPARATOR;
@@ -114,13 +203,25 @@ public final class ResourceURI {
     if (!normBaseUrl.endsWith(SEPARATOR)) {
       normBaseUrl += SEPARATOR;
     }
+    return normBaseUrl;
+  }
+
+  /**
+   * Resolve a path against a normalized base url.
+   *
+   * @param normBaseUrl The normalized base url.
+   * @param path The dependency's path. It might be prefixed with: <code>prefix!</code> where
+   *        <code>prefix</code> is usually a plugin.
+   * @return The resolved path.
+   */
+  private static String resolve(final String normBaseUrl, final String path) {
     int idx = Math.max(0, path.indexOf('!') + 1);
-    StringBuilder uri = new StringBuilder(path);
-    if (uri.charAt(idx) == SEPARATOR.charAt(0)) {
-      uri.deleteCharAt(idx);
-    }
-    uri.insert(idx, normBaseUrl);
-    return create(uri.toString());
+    int start = path.charAt(idx) == SEPARATOR.charAt(0) ? idx + 1 : idx;
+    return new StringBuilder(path.length() + normBaseUrl.length())
+        .append(path, 0, idx)
+        .append(normBaseUrl)
+        .append(path, start, path.length())
+        .toString();
   }
 
   /**
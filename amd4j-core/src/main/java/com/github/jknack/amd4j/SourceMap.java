@@ -0,0 +1,379 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A <a href="https://sourcemaps.info/spec.html">source map (v3)</a> generator. Mappings are
+ * added while the output is being built, so there is no need to parse the output again. All the
+ * line and column numbers are zero-based.
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+public class SourceMap {
+
+  /**
+   * The base64 alphabet used by the VLQ encoding.
+   */
+  private static final char[] BASE64 =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+  /**
+   * The number of bits of a VLQ digit.
+   */
+  private static final int VLQ_SHIFT = 5;
+
+  /**
+   * The continuation bit of a VLQ digit.
+   */
+  private static final int VLQ_CONTINUATION = 1 << VLQ_SHIFT;
+
+  /**
+   * The mask of a VLQ digit.
+   */
+  private static final int VLQ_MASK = VLQ_CONTINUATION - 1;
+
+  /**
+   * The unicode line separator, not allowed in JavaScript strings.
+   */
+  private static final char LINE_SEPARATOR = 0x2028;
+
+  /**
+   * The unicode paragraph separator, not allowed in JavaScript strings.
+   */
+  private static final char PARAGRAPH_SEPARATOR = 0x2029;
+
+  /**
+   * The generated line of a mapping.
+   */
+  private static final int LINE = 0;
+
+  /**
+   * The generated column of a mapping.
+   */
+  private static final int COLUMN = 1;
+
+  /**
+   * The source's index of a mapping.
+   */
+  private static final int SOURCE = 2;
+
+  /**
+   * The original line of a mapping.
+   */
+  private static final int SOURCE_LINE = 3;
+
+  /**
+   * The original column of a mapping.
+   */
+  private static final int SOURCE_COLUMN = 4;
+
+  /**
+   * The source's names.
+   */
+  private final List<String> sources = new ArrayList<String>();
+
+  /**
+   * The source's contents, it might contains null values.
+   */
+  private final List<String> contents = new ArrayList<String>();
+
+  /**
+   * The index of each source.
+   */
+  private final Map<String, Integer> index = new HashMap<String, Integer>();
+
+  /**
+   * The mappings, as: line, column, source, source line and source column.
+   */
+  private List<int[]> mappings = new ArrayList<int[]>();
+
+  /**
+   * True, if the mappings are sorted by line and column.
+   */
+  private boolean sorted = true;
+
+  /**
+   * Add a source file to the map.
+   *
+   * @param source The source's name. Required.
+   * @param content The source's content. Optional.
+   * @return The source's index.
+   */
+  public int addSource(final String source, final String content) {
+    notNull(source, "The source is required.");
+    Integer idx = index.get(source);
+    if (idx == null) {
+      idx = sources.size();
+      sources.add(source);
+      contents.add(content);
+      index.put(source, idx);
+    }
+    return idx;
+  }
+
+  /**
+   * Map a position of the output to a position of a source file.
+   *
+   * @param line The output's line.
+   * @param column The output's column.
+   * @param source The source's index, see {@link #addSource(String, String)}.
+   * @param sourceLine The source's line.
+   * @param sourceColumn The source's column.
+   * @return This source map.
+   */
+  public SourceMap addMapping(final int line, final int column, final int source,
+      final int sourceLine, final int sourceColumn) {
+    isTrue(source >= 0 && source < sources.size(), "Unknown source: %s", source);
+    int[] mapping = {line, column, source, sourceLine, sourceColumn };
+    if (sorted && mappings.size() > 0) {
+      sorted = compare(mappings.get(mappings.size() - 1), mapping) <= 0;
+    }
+    mappings.add(mapping);
+    return this;
+  }
+
+  /**
+   * Remove all the mappings. Sources are kept.
+   *
+   * @return This source map.
+   */
+  public SourceMap clear() {
+    mappings.clear();
+    sorted = true;
+    return this;
+  }
+
+  /**
+   * True, if the source map doesn't have any mapping.
+   *
+   * @return True, if the source map doesn't have any mapping.
+   */
+  public boolean isEmpty() {
+    return mappings.isEmpty();
+  }
+
+  /**
+   * Rewrite the mappings of this source map, which points to an intermediate output, using a source
+   * map of the final output. The given map must map the final output to the output of this map
+   * (mapped as source 0).
+   *
+   * @param map A source map of the final output. Required.
+   * @return This source map.
+   */
+  public SourceMap compose(final SourceMap map) {
+    notNull(map, "The map is required.");
+    sort();
+    List<int[]> composed = new ArrayList<int[]>(map.mappings.size());
+    for (int[] mapping : map.mappings) {
+      int[] original = find(mapping[SOURCE_LINE], mapping[SOURCE_COLUMN]);
+      if (original != null) {
+        int offset = mapping[SOURCE_COLUMN] - original[COLUMN];
+        composed.add(new int[]{mapping[LINE], mapping[COLUMN], original[SOURCE],
+            original[SOURCE_LINE], original[SOURCE_COLUMN] + offset });
+      }
+    }
+    mappings = composed;
+    sorted = false;
+    return this;
+  }
+
+  /**
+   * Find the mapping of the given output's position. It is the closest mapping on the same line
+   * at or before the column.
+   *
+   * @param line The output's line.
+   * @param column The output's column.
+   * @return The mapping or null.
+   */
+  private int[] find(final int line, final int column) {
+    int low = 0;
+    int high = mappings.size() - 1;
+    int[] found = null;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int[] mapping = mappings.get(mid);
+      if (mapping[LINE] < line || mapping[LINE] == line && mapping[COLUMN] <= column) {
+        if (mapping[LINE] == line) {
+          found = mapping;
+        }
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Sort the mappings by line and column, if they aren't sorted yet.
+   */
+  private void sort() {
+    if (!sorted) {
+      int[][] array = mappings.toArray(new int[mappings.size()][]);
+      Arrays.sort(array, new Comparator<int[]>() {
+        @Override
+        public int compare(final int[] m1, final int[] m2) {
+          return SourceMap.compare(m1, m2);
+        }
+      });
+      mappings = new ArrayList<int[]>(Arrays.asList(array));
+      sorted = true;
+    }
+  }
+
+  /**
+   * Compare two mappings by line and column.
+   *
+   * @param m1 The first mapping.
+   * @param m2 The second mapping.
+   * @return The comparison result.
+   */
+  private static int compare(final int[] m1, final int[] m2) {
+    if (m1[LINE] != m2[LINE]) {
+      return m1[LINE] < m2[LINE] ? -1 : 1;
+    }
+    return m1[COLUMN] < m2[COLUMN] ? -1 : m1[COLUMN] == m2[COLUMN] ? 0 : 1;
+  }
+
+  /**
+   * Generate the source map.
+   *
+   * @param file The output's file name. Required.
+   * @return The source map in JSON format.
+   */
+  public String toJson(final String file) {
+    notNull(file, "The file is required.");
+    sort();
+    StringBuilder json = new StringBuilder();
+    json.append("{\"version\":3,\"file\":");
+    quote(json, file);
+    json.append(",\"sources\":[");
+    String sep = "";
+    for (String source : sources) {
+      json.append(sep);
+      quote(json, source);
+      sep = ",";
+    }
+    json.append("],\"sourcesContent\":[");
+    sep = "";
+    for (String content : contents) {
+      json.append(sep);
+      if (content == null) {
+        json.append("null");
+      } else {
+        quote(json, content);
+      }
+      sep = ",";
+    }
+    json.append("],\"names\":[],\"mappings\":\"");
+    int line = 0;
+    int column = 0;
+    int source = 0;
+    int sourceLine = 0;
+    int sourceColumn = 0;
+    boolean first = true;
+    for (int[] mapping : mappings) {
+      while (line < mapping[LINE]) {
+        json.append(';');
+        line++;
+        column = 0;
+        first = true;
+      }
+      if (!first) {
+        json.append(',');
+      }
+      vlq(json, mapping[COLUMN] - column);
+      vlq(json, mapping[SOURCE] - source);
+      vlq(json, mapping[SOURCE_LINE] - sourceLine);
+      vlq(json, mapping[SOURCE_COLUMN] - sourceColumn);
+      column = mapping[COLUMN];
+      source = mapping[SOURCE];
+      sourceLine = mapping[SOURCE_LINE];
+      sourceColumn = mapping[SOURCE_COLUMN];
+      first = false;
+    }
+    json.append("\"}");
+    return json.toString();
+  }
+
+  /**
+   * Append a base64 VLQ value.
+   *
+   * @param buffer The output.
+   * @param value The value.
+   */
+  private static void vlq(final StringBuilder buffer, final int value) {
+    int vlq = value < 0 ? (-value << 1) + 1 : value << 1;
+    do {
+      int digit = vlq & VLQ_MASK;
+      vlq >>>= VLQ_SHIFT;
+      if (vlq > 0) {
+        digit |= VLQ_CONTINUATION;
+      }
+      buffer.append(BASE64[digit]);
+    } while (vlq > 0);
+  }
+
+  /**
+   * Append a JSON string.
+   *
+   * @param buffer The output.
+   * @param value The string value.
+   */
+  static void quote(final StringBuilder buffer, final String value) {
+    buffer.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char ch = value.charAt(i);
+      switch (ch) {
+        case '"':
+          buffer.append("\\\"");
+          break;
+        case '\\':
+          buffer.append("\\\\");
+          break;
+        case '\n':
+          buffer.append("\\n");
+          break;
+        case '\r':
+          buffer.append("\\r");
+          break;
+        case '\t':
+          buffer.append("\\t");
+          break;
+        default:
+          if (ch < ' ' || ch == LINE_SEPARATOR || ch == PARAGRAPH_SEPARATOR) {
+            buffer.append(String.format("\\u%04x", (int) ch));
+          } else {
+            buffer.append(ch);
+          }
+      }
+    }
+    buffer.append('"');
+  }
+}
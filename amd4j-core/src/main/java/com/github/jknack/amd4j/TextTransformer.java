@@ -38,6 +38,8 @@ public class TextTransformer implements Transformer {
    * object allows the EcmaScript escaping functionality to be used
    * as the foundation for a custom translator.
    *
+   * The transformer doesn't use it anymore, see {@link #escape(CharSequence, StringBuilder)}.
+   *
    * @since 3.0
    */
   public static final CharSequenceTranslator ESCAPE_ECMASCRIPT =
@@ -51,6 +53,41 @@ public class TextTransformer implements Transformer {
           UnicodeEscaper.outsideOf(32, 0x7f)
       );
 
+  /**
+   * The hexadecimal digits of unicode escapes.
+   */
+  private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+  /**
+   * The first char that is escaped as unicode, after the ASCII range.
+   */
+  private static final char NON_ASCII = 0x80;
+
+  /**
+   * The minimum number of digits of unicode escapes.
+   */
+  private static final int UNICODE_DIGITS = 4;
+
+  /**
+   * The number of bits of an hexadecimal digit.
+   */
+  private static final int HEX_BITS = 4;
+
+  /**
+   * The mask of an hexadecimal digit.
+   */
+  private static final int HEX_MASK = 0xf;
+
+  /**
+   * The define's start.
+   */
+  private static final String START = "define([],function () { return '";
+
+  /**
+   * The define's end.
+   */
+  private static final String END = "';});\n";
+
   @Override
   public boolean apply(final ResourceURI uri) {
     return "text".equals(uri.getPrefix());
@@ -60,14 +97,88 @@ public class TextTransformer implements Transformer {
   public StringBuilder transform(final Config config, final String name,
       final StringBuilder content) {
     if (config.isInlineText()) {
-      StringBuilder define = new StringBuilder("define([],function () {");
-      define.append(" return '")
-          .append(ESCAPE_ECMASCRIPT.translate(content)).append("';");
-      define.append("});\n");
+      // most of the text is copied as it is: reserve some extra space for escapes
+      int length = content.length();
+      StringBuilder define = new StringBuilder(START.length() + length + (length >> 3)
+          + END.length());
+      define.append(START);
+      escape(content, define);
+      define.append(END);
       return define;
     } else {
       return new StringBuilder();
     }
   }
 
+  /**
+   * Escape text as a JavaScript string literal in a single pass. The output is the same as the
+   * one of {@link #ESCAPE_ECMASCRIPT}: quotes, backslashes and control chars are escaped with a
+   * backslash and non-ASCII chars are escaped as unicode. Runs of plain ASCII chars are copied in
+   * bulk.
+   *
+   * @param input The text to escape.
+   * @param out The output.
+   */
+  static void escape(final CharSequence input, final StringBuilder out) {
+    int length = input.length();
+    int start = 0;
+    int i = 0;
+    while (i < length) {
+      char ch = input.charAt(i);
+      if (ch >= ' ' && ch < NON_ASCII && ch != '\'' && ch != '\\') {
+        i++;
+        continue;
+      }
+      out.append(input, start, i);
+      switch (ch) {
+        case '\'':
+          out.append("\\'");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\b':
+          out.append("\\b");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        case '\f':
+          out.append("\\f");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        default:
+          int codePoint = Character.codePointAt(input, i);
+          unicode(codePoint, out);
+          i += Character.charCount(codePoint) - 1;
+          break;
+      }
+      i++;
+      start = i;
+    }
+    out.append(input, start, length);
+  }
+
+  /**
+   * Append a unicode escape: a backslash, an <code>u</code> and the hexadecimal digits. Code
+   * points out of the BMP are written with all their digits (not as surrogate pairs), like
+   * {@link #ESCAPE_ECMASCRIPT} does.
+   *
+   * @param codePoint The code point.
+   * @param out The output.
+   */
+  private static void unicode(final int codePoint, final StringBuilder out) {
+    int bits = Integer.SIZE - Integer.numberOfLeadingZeros(codePoint);
+    int digits = Math.max(UNICODE_DIGITS, (bits + HEX_BITS - 1) / HEX_BITS);
+    out.append('\\').append('u');
+    for (int shift = (digits - 1) * HEX_BITS; shift >= 0; shift -= HEX_BITS) {
+      out.append(HEX[(codePoint >> shift) & HEX_MASK]);
+    }
+  }
+
 }
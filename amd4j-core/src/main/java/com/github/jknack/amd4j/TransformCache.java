@@ -0,0 +1,224 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content-addressed cache of transformed modules. Entries are keyed by a hash of everything a
+ * transformation depends on: the module's content, name and uri, the <code>useStrict</code> and
+ * <code>inlineText</code> options, the module's shim and the classes of the transformer chain.
+ * A module transformed once is reused by every optimizer (and build) sharing the cache.
+ * <p>
+ * The in-memory tier keeps the most recently used entries. An optional directory keeps every
+ * entry on disk, so it survives between builds. The cache is thread-safe.
+ * </p>
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+public class TransformCache {
+
+  /**
+   * The cache's encoding.
+   */
+  private static final String ENCODING = "UTF-8";
+
+  /**
+   * The key's algorithm.
+   */
+  private static final String ALGORITHM = "SHA-1";
+
+  /**
+   * The logging system.
+   */
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * The in-memory tier: a LRU map.
+   */
+  private final Map<String, String> memory;
+
+  /**
+   * The on-disk tier or null.
+   */
+  private final File directory;
+
+  /**
+   * Creates a new in-memory {@link TransformCache}.
+   *
+   * @param maxEntries The max number of entries to keep in memory.
+   */
+  public TransformCache(final int maxEntries) {
+    this(maxEntries, null);
+  }
+
+  /**
+   * Creates a new {@link TransformCache}.
+   *
+   * @param maxEntries The max number of entries to keep in memory.
+   * @param directory The on-disk tier. Optional.
+   */
+  @SuppressWarnings("serial")
+  public TransformCache(final int maxEntries, final File directory) {
+    isTrue(maxEntries > 0, "The maxEntries must be greater than 0: %s", maxEntries);
+    this.directory = directory;
+    this.memory = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(final Entry<String, String> eldest) {
+        return size() > maxEntries;
+      }
+    };
+  }
+
+  /**
+   * Get a transformed module.
+   *
+   * @param key The cache's key, see {@link #key(Config, Module, List)}.
+   * @return The transformed module or null.
+   */
+  public String get(final String key) {
+    notNull(key, "The key is required.");
+    synchronized (memory) {
+      String content = memory.get(key);
+      if (content != null) {
+        return content;
+      }
+    }
+    if (directory != null) {
+      File file = file(key);
+      if (file.exists()) {
+        try {
+          String content = FileUtils.readFileToString(file, ENCODING);
+          synchronized (memory) {
+            memory.put(key, content);
+          }
+          return content;
+        } catch (IOException ex) {
+          logger.warn("Can't read: " + file, ex);
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Save a transformed module.
+   *
+   * @param key The cache's key, see {@link #key(Config, Module, List)}.
+   * @param content The transformed module.
+   */
+  public void put(final String key, final String content) {
+    notNull(key, "The key is required.");
+    notNull(content, "The content is required.");
+    synchronized (memory) {
+      memory.put(key, content);
+    }
+    if (directory != null) {
+      File file = file(key);
+      // write a temporary file and rename it, so concurrent builds never read a partial entry
+      File tmp = new File(directory, key + "." + Thread.currentThread().getId() + ".tmp");
+      try {
+        FileUtils.writeStringToFile(tmp, content, ENCODING);
+        if (!tmp.renameTo(file)) {
+          tmp.delete();
+        }
+      } catch (IOException ex) {
+        tmp.delete();
+        logger.warn("Can't write: " + file, ex);
+      }
+    }
+  }
+
+  /**
+   * Creates the cache's key of a module.
+   *
+   * @param config The configuration options.
+   * @param module The module.
+   * @param transformers The transformer chain.
+   * @return The cache's key.
+   */
+  public static String key(final Config config, final Module module,
+      final List<Transformer> transformers) {
+    MessageDigest digest = digest();
+    update(digest, module.content);
+    update(digest, module.name);
+    update(digest, module.uri.toString());
+    update(digest, String.valueOf(config.isUseStrict()));
+    update(digest, String.valueOf(config.isInlineText()));
+    update(digest, String.valueOf(config.getShim(module.name)));
+    for (Transformer transformer : transformers) {
+      update(digest, transformer.getClass().getName());
+    }
+    return BundleWriter.toHex(digest.digest());
+  }
+
+  /**
+   * Add a value to the key.
+   *
+   * @param digest The key's digest.
+   * @param value The value.
+   */
+  private static void update(final MessageDigest digest, final String value) {
+    try {
+      digest.update(value.getBytes(ENCODING));
+      // separator
+      digest.update((byte) 0);
+    } catch (UnsupportedEncodingException ex) {
+      throw new IllegalStateException(ENCODING + " isn't available", ex);
+    }
+  }
+
+  /**
+   * Creates the key's digest.
+   *
+   * @return A new digest.
+   */
+  private static MessageDigest digest() {
+    try {
+      return MessageDigest.getInstance(ALGORITHM);
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ALGORITHM + " isn't available", ex);
+    }
+  }
+
+  /**
+   * The file of an entry.
+   *
+   * @param key The entry's key.
+   * @return The file of an entry.
+   */
+  private File file(final String key) {
+    return new File(directory, key + ".js");
+  }
+}
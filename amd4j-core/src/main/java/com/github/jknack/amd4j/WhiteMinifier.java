@@ -18,9 +18,22 @@
 package com.github.jknack.amd4j;
 
 import static org.apache.commons.io.FilenameUtils.removeExtension;
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstNode;
 import org.mozilla.javascript.ast.AstRoot;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.StringLiteral;
 
 /**
  * Remove comments, spaces and new lines from a JavaScript file.
@@ -30,13 +43,169 @@ import org.mozilla.javascript.ast.AstRoot;
  */
 public class WhiteMinifier extends Minifier {
 
+  /**
+   * How many tokens of the input might be missing in the output, before a token of the output is
+   * considered new (not mapped).
+   */
+  private static final int LOOKAHEAD = 16;
+
+  /**
+   * Keywords that might be followed by a regex literal.
+   */
+  private static final Set<String> REGEX_KEYWORDS = new HashSet<String>(Arrays.asList("case",
+      "delete", "do", "else", "in", "instanceof", "new", "return", "throw", "typeof", "void"));
+
   @Override
   public CharSequence minify(final Config config, final CharSequence input) {
+    return strip(parse(config, input).toSource());
+  }
+
+  @Override
+  public CharSequence minify(final Config config, final CharSequence input,
+      final SourceMap sourceMap) {
+    notNull(sourceMap, "The sourceMap is required.");
+    AstRoot tree = parse(config, input);
+    CharSequence output = strip(tree.toSource());
+    sourceMap.compose(sourceMap(input.toString(), tree, output));
+    return output;
+  }
+
+  /**
+   * Parse the JavaScript code.
+   *
+   * @param config The configuration options.
+   * @param input The JavaScript code.
+   * @return The syntax tree.
+   */
+  private static AstRoot parse(final Config config, final CharSequence input) {
     Parser parser = new Parser();
     String fname = removeExtension(config.getName()) + ".js";
-    AstRoot tree = parser.parse(input.toString(), fname, 1);
+    return parser.parse(input.toString(), fname, 1);
+  }
+
+  /**
+   * Map the output to the input. Names, keywords and literals are copied as they are, in the same
+   * order, so each one of them is mapped to the next node of the input that starts with the same
+   * text. Everything else (spaces, comments, punctuation) doesn't need a mapping.
+   *
+   * @param input The JavaScript code.
+   * @param tree The syntax tree of the JavaScript code.
+   * @param output The minified output.
+   * @return A source map of the output, where the input is the source 0.
+   */
+  private static SourceMap sourceMap(final String input, final AstRoot tree,
+      final CharSequence output) {
+    // the start and length of the first token of each node
+    final Map<Integer, Integer> tokens = new TreeMap<Integer, Integer>();
+    tree.visit(new NodeVisitor() {
+      @Override
+      public boolean visit(final AstNode node) {
+        int start = node.getAbsolutePosition();
+        int end = node instanceof StringLiteral ? start + node.getLength() : word(input, start);
+        if (end > start) {
+          tokens.put(start, end - start);
+        }
+        return true;
+      }
+    });
+    int[] starts = new int[tokens.size()];
+    int[] lengths = new int[tokens.size()];
+    int count = 0;
+    for (Entry<Integer, Integer> token : tokens.entrySet()) {
+      starts[count] = token.getKey();
+      lengths[count] = token.getValue();
+      count++;
+    }
+    List<Integer> lines = new ArrayList<Integer>();
+    lines.add(0);
+    for (int i = 0; i < input.length(); i++) {
+      if (input.charAt(i) == '\n') {
+        lines.add(i + 1);
+      }
+    }
+
+    SourceMap sourceMap = new SourceMap();
+    int source = sourceMap.addSource("input", null);
+    String text = output.toString();
+    int line = 0;
+    int lineStart = 0;
+    int next = 0;
+    int i = 0;
+    while (i < text.length()) {
+      char ch = text.charAt(i);
+      int end;
+      boolean token = true;
+      if (ch == '\'' || ch == '"') {
+        end = i + stringLiteral(text, ch, i).length();
+      } else if (ch == '/' && isRegex(text, i)) {
+        end = i + regex(text, i).length();
+        token = false;
+      } else {
+        end = word(text, i);
+        if (end == i) {
+          end = i + 1;
+          token = false;
+        }
+      }
+      if (token) {
+        int last = Math.min(next + LOOKAHEAD, count);
+        for (int t = next; t < last; t++) {
+          if (lengths[t] == end - i && input.regionMatches(starts[t], text, i, end - i)) {
+            int sourceLine = line(lines, starts[t]);
+            sourceMap.addMapping(line, i - lineStart, source, sourceLine,
+                starts[t] - lines.get(sourceLine));
+            next = t + 1;
+            break;
+          }
+        }
+      }
+      for (int j = i; j < end; j++) {
+        if (text.charAt(j) == '\n') {
+          line++;
+          lineStart = j + 1;
+        }
+      }
+      i = end;
+    }
+    return sourceMap;
+  }
 
-    return strip(tree.toSource());
+  /**
+   * Find the end of the name, keyword or number that starts at the given offset.
+   *
+   * @param text The JavaScript code.
+   * @param start The start offset.
+   * @return The end of the word or the start offset if there isn't a word.
+   */
+  private static int word(final String text, final int start) {
+    int end = start;
+    boolean number = start < text.length() && Character.isDigit(text.charAt(start));
+    while (end < text.length() && (Character.isJavaIdentifierPart(text.charAt(end))
+        || number && text.charAt(end) == '.')) {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Find the line of an offset.
+   *
+   * @param lines The offset where each line starts.
+   * @param offset The offset.
+   * @return The line (zero based) of the offset.
+   */
+  private static int line(final List<Integer> lines, final int offset) {
+    int low = 0;
+    int high = lines.size() - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (lines.get(mid) <= offset) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
   }
 
   /**
@@ -54,14 +223,19 @@ public class WhiteMinifier extends Minifier {
         String literal = stringLiteral(source, ch, i);
         buffer.append(literal);
         i += literal.length() - 1;
-      } else if (ch == '/') {
+      } else if (ch == '/' && isRegex(source, i)) {
         String regex = regex(source, i);
         buffer.append(regex);
         i += regex.length() - 1;
       } else if (Character.isWhitespace(ch)) {
-        if (i + 1 < source.length() && Character.isJavaIdentifierStart(source.charAt(i + 1))) {
+        char next = i + 1 < source.length() ? source.charAt(i + 1) : ch;
+        if (Character.isJavaIdentifierStart(next)) {
           // keep white between keywords or identifiers.
           buffer.append(' ');
+        } else if ("+-/".indexOf(next) >= 0 && buffer.length() > 0
+            && buffer.charAt(buffer.length() - 1) == next) {
+          // keep white between operators, so they aren't merged: a - -b, a / /b/
+          buffer.append(' ');
         }
       } else {
         buffer.append(ch);
@@ -79,7 +253,7 @@ public class WhiteMinifier extends Minifier {
    * @param start The start position.
    * @return A string literal.
    */
-  private String stringLiteral(final String source, final char str, final int start) {
+  private static String stringLiteral(final String source, final char str, final int start) {
     int i = start + 1;
     while (i < source.length()) {
       char ch = source.charAt(i);
@@ -91,6 +265,40 @@ public class WhiteMinifier extends Minifier {
     return source.substring(start, i + 1);
   }
 
+  /**
+   * Check if the slash at the given offset starts a regex literal or if it's a division. It's a
+   * division when the previous token is an operand: a name, a number, a closing bracket or a
+   * postfix operator.
+   *
+   * @param source The javascript source.
+   * @param start The offset of the slash.
+   * @return True for a regex literal, false for a division.
+   */
+  private static boolean isRegex(final String source, final int start) {
+    int end = start;
+    while (end > 0 && Character.isWhitespace(source.charAt(end - 1))) {
+      end--;
+    }
+    if (end == 0) {
+      return true;
+    }
+    char ch = source.charAt(end - 1);
+    if (ch == ')' || ch == ']') {
+      return false;
+    }
+    if ((ch == '+' || ch == '-') && end > 1 && source.charAt(end - 2) == ch) {
+      return false;
+    }
+    if (Character.isJavaIdentifierPart(ch)) {
+      int begin = end - 1;
+      while (begin > 0 && Character.isJavaIdentifierPart(source.charAt(begin - 1))) {
+        begin--;
+      }
+      return REGEX_KEYWORDS.contains(source.substring(begin, end));
+    }
+    return true;
+  }
+
   /**
    * Extract a regex literal from source.
    *
@@ -98,7 +306,7 @@ public class WhiteMinifier extends Minifier {
    * @param start The start position.
    * @return A regex literal.
    */
-  private String regex(final String source, final int start) {
+  private static String regex(final String source, final int start) {
     int i = start + 1;
     while (i < source.length()) {
       char ch = source.charAt(i);
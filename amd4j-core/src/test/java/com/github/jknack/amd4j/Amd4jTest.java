@@ -0,0 +1,78 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class Amd4jTest {
+
+  private static final Minifier UPPER = new Minifier() {
+    @Override
+    public CharSequence minify(final Config config, final CharSequence input) {
+      return input.toString().toUpperCase();
+    }
+  };
+
+  @Test
+  public void immutable() {
+    Amd4j amd4j = new Amd4j();
+    Amd4j upper = amd4j.with("Upper", UPPER);
+    assertNotSame(amd4j, upper);
+    assertSame(UPPER, upper.getMinifier("upper"));
+    assertSame(Minifier.get("white"), upper.getMinifier("white"));
+    try {
+      amd4j.getMinifier("upper");
+      fail("Minifiers are registered per instance");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("No minifier/optimizer found for: upper", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void concurrentBuilds() throws Exception {
+    final Amd4j amd4j = new Amd4j()
+        .with(new TextTransformer())
+        .with(new TransformCache(16))
+        .with("upper", UPPER);
+    final Config config = new Config(".", "z").setOptimize("upper").snapshot();
+    final String expected = optimize(amd4j, config);
+    assertEquals(expected.toUpperCase(), expected);
+
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<String>> results = new ArrayList<Future<String>>();
+      for (int i = 0; i < threads * 4; i++) {
+        results.add(executor.submit(new Callable<String>() {
+          @Override
+          public String call() throws IOException {
+            return optimize(amd4j, config);
+          }
+        }));
+      }
+      for (Future<String> result : results) {
+        assertEquals(expected, result.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String optimize(final Amd4j amd4j, final Config config) throws IOException {
+    StringWriter writer = new StringWriter();
+    amd4j.optimize(new Config(config).setOut(writer));
+    return writer.toString();
+  }
+}
@@ -0,0 +1,42 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class ConfigCacheTest {
+
+  @Test
+  public void parseOnce() throws IOException {
+    File build = new File("target/config-cache/build.js");
+    FileUtils.writeStringToFile(build, "({name: 'x', paths: {a: 'lib/a'}})", "UTF-8");
+    ConfigCache cache = new ConfigCache();
+
+    Config c1 = cache.get(build);
+    Config c2 = cache.get(build);
+    assertNotSame(c1, c2);
+    assertEquals(1, cache.size());
+
+    c1.setName("y").path("a", "vendor/a");
+    assertEquals("x", c2.getName());
+    assertEquals("lib/a", c2.resolvePath("a"));
+    assertEquals("lib/a", cache.get(build).resolvePath("a"));
+  }
+
+  @Test
+  public void modified() throws IOException {
+    File build = new File("target/config-cache/modified.js");
+    FileUtils.writeStringToFile(build, "({name: 'x'})", "UTF-8");
+    ConfigCache cache = new ConfigCache();
+    assertEquals("x", cache.get(build).getName());
+
+    FileUtils.writeStringToFile(build, "({name: 'xy'})", "UTF-8");
+    assertEquals("xy", cache.get(build).getName());
+    assertEquals(1, cache.size());
+  }
+}
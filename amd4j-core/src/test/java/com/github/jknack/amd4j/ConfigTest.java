@@ -1,15 +1,24 @@
 package com.github.jknack.amd4j;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
+import com.github.jknack.amd4j.JsonParser.JsonParseException;
+
 public class ConfigTest {
 
   @Test
@@ -62,4 +71,118 @@ public class ConfigTest {
     assertEquals(Arrays.asList("https://ajax.googleapis.com/ajax/libs/jquery/1.8.3/jquery.min",
         "js/components/external/jquery"), fallback);
   }
+
+  @Test
+  public void relaxedLiteral() throws IOException {
+    Config config = Config.parse("/* build {x} */ require.config({\n"
+        + "  // name: 'nope',\n"
+        + "  \"name\": 'it\\'s',\n"
+        + "  optimize: \"white\",\n"
+        + "  shim: {\n"
+        + "    a: ['b', 'c',],\n"
+        + "    d: {exports: 'D', init: function () { return /}'/.test('}') ? {} : null; }},\n"
+        + "  },\n"
+        + "});");
+    assertEquals("it's", config.getName());
+    assertEquals(Minifier.get("white"), config.getOptimize());
+    assertEquals(new HashSet<String>(Arrays.asList("b", "c")),
+        config.getShim("a").dependencies());
+    assertEquals("D", config.getShim("d").exports());
+    assertEquals("function() {\n  return /}'/.test('}') ? {} : null;\n}",
+        config.getShim("d").init());
+  }
+
+  @Test
+  public void scalarShim() throws IOException {
+    for (String value : new String[]{"'x'", "1", "null" }) {
+      try {
+        Config.parse("{shim: {a: " + value + ", b: {exports: 'B'}}}");
+        fail("Invalid shim expected: " + value);
+      } catch (JsonParseException ex) {
+        assertTrue(ex.getMessage(), ex.getMessage().startsWith("Invalid shim for 'a'"));
+      }
+    }
+    Config config = Config.parse("{shim: {a: ['x'], b: {exports: 'B'}}}");
+    assertEquals("B", config.getShim("b").exports());
+  }
+
+  @Test
+  public void resolvePathPrefix() throws IOException {
+    Config config = Config.parse("{paths: {vendor: 'lib/vendor', 'vendor/jquery': 'empty:',"
+        + " 'vendor/a/b': 'ab', tpl: 'templates'}}");
+    assertEquals("lib/vendor", config.resolvePath("vendor"));
+    assertEquals("lib/vendor/foo/bar", config.resolvePath("vendor/foo/bar"));
+    assertEquals("ab/c", config.resolvePath("vendor/a/b/c"));
+    assertEquals("lib/vendor/a/bc", config.resolvePath("vendor/a/bc"));
+    assertEquals(Config.EMPTY, config.resolvePath("vendor/jquery"));
+    assertEquals(Config.EMPTY, config.resolvePath("vendor/jquery/ui"));
+    assertEquals("vendors/foo", config.resolvePath("vendors/foo"));
+    assertEquals("text!templates/home.html", config.resolvePath("text!tpl/home.html"));
+    assertEquals(Config.EMPTY, config.resolvePath("require"));
+
+    config.path("vendors", "lib/vendors");
+    assertEquals("lib/vendors/foo", config.resolvePath("vendors/foo"));
+  }
+
+  @Test
+  public void resolvePluginPath() throws IOException {
+    Config config = Config.parse("{paths: {foo: 'bar', tpl: 'templates', jquery: 'empty:'}}");
+    assertEquals("text!bar", config.resolvePath("text!foo"));
+    assertEquals("text!templates/home.html", config.resolvePath("text!tpl/home.html"));
+    assertEquals("text!baz", config.resolvePath("text!baz"));
+    assertEquals(Config.EMPTY, config.resolvePath("text!jquery"));
+    assertEquals("bar", config.resolvePath("foo"));
+  }
+
+  @Test
+  public void copy() throws IOException {
+    Config config = Config.parse("({name: 'x', baseUrl: 'js', paths: {a: 'lib/a'}, "
+        + "shim: {b: {deps: ['a'], exports: 'B'}}})");
+    Config copy = new Config(config).setName("y").path("c", "lib/c");
+    config.path("d", "lib/d");
+
+    assertEquals("y", copy.getName());
+    assertEquals("js", copy.getBaseUrl());
+    assertEquals("lib/a/x", copy.resolvePath("a/x"));
+    assertEquals("lib/c/x", copy.resolvePath("c/x"));
+    assertEquals("d/x", copy.resolvePath("d/x"));
+    assertEquals("B", copy.getShim("b").exports());
+
+    assertEquals("x", config.getName());
+    assertEquals("c/x", config.resolvePath("c/x"));
+    assertEquals("lib/d/x", config.resolvePath("d/x"));
+  }
+
+  @Test
+  public void snapshot() throws IOException {
+    Config config = new Config("js", "x").path("a", "lib/a");
+    Config snapshot = config.snapshot();
+    config.path("a", "vendor/a").setName("y");
+
+    assertTrue(snapshot.isSnapshot());
+    assertSame(snapshot, snapshot.snapshot());
+    assertEquals("x", snapshot.getName());
+    assertEquals("lib/a/b", snapshot.resolvePath("a/b"));
+    try {
+      snapshot.path("a", "vendor/a");
+      fail("Read-only snapshot expected");
+    } catch (IllegalStateException ex) {
+      assertEquals("The configuration is a read-only snapshot: x", ex.getMessage());
+    }
+
+    Config copy = new Config(snapshot).path("a", "vendor/a");
+    assertFalse(copy.isSnapshot());
+    assertEquals("vendor/a/b", copy.resolvePath("a/b"));
+    assertEquals("lib/a/b", snapshot.resolvePath("a/b"));
+  }
+
+  @Test
+  public void lazyOut() throws IOException {
+    File out = new File("target/lazy-out/x.js");
+    FileUtils.deleteQuietly(out.getParentFile());
+    Config config = new Config("x", out);
+    assertEquals(out, config.getOutFile());
+    assertNull(config.getOut());
+    assertFalse(out.exists());
+  }
 }
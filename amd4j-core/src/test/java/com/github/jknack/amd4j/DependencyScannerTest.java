@@ -0,0 +1,160 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.mozilla.javascript.EvaluatorException;
+
+public class DependencyScannerTest {
+
+  @Test
+  public void define() {
+    assertScan("define(['a', \"b\", 'text!c.html'], function (a, b, c) {});", "a", "b", "text",
+        "text!c.html");
+    assertScan("define('x', ['a'], function (a) {});", "a");
+    assertScan("define({color: 'black'});");
+    assertScan("define(function (require) { var a = require('a'); });");
+    assertScan("define([], function () {});");
+    assertScan("define(['a\\x2Fb', 'c\\u002Fd'], function () {});", "a/b", "c/d");
+  }
+
+  @Test
+  public void skipStringsCommentsAndRegExps() {
+    assertScan("// define(['a'], function () {});\n"
+        + "/* require(['b']); */\n"
+        + "var s = \"define(['c'])\", r = /define\\(['d']\\)/g, x = 4 / 2 /1;\n"
+        + "if (x) /require(['e'])/.test(s);\n"
+        + "define(['f'], function () {});", "f");
+  }
+
+  @Test
+  public void propertiesAndDeclarations() {
+    assertScan("x.define(['a']); new require(['b']); function define(deps) {}\n"
+        + "define(['c']);", "c");
+  }
+
+  @Test
+  public void nestedRequire() {
+    String src = "require(['a'], function () {\n"
+        + "  require(['b'], function () {});\n"
+        + "  define(['c'], function () {});\n"
+        + "});\n"
+        + "if (x) require(['d']);\n"
+        + "var y = require(['e']);\n"
+        + "{ require(['f']); }\n"
+        + "x = 1; require(['g'])\n"
+        + "foo\n"
+        + "require(['h'])";
+    assertScan(src, "a", "c", "g", "h");
+    assertScan(src, true, "a", "b", "c", "d", "e", "f", "g", "h");
+  }
+
+  @Test
+  public void splitPoints() {
+    String src = "define(['a'], function () {\n"
+        + "  require(['b', 'text!c.html'], function () {\n"
+        + "    require(['d']);\n"
+        + "  });\n"
+        + "  require('e');\n"
+        + "});\n"
+        + "require(['f']);";
+    List<Set<String>> expected = new ArrayList<Set<String>>();
+    expected.add(new LinkedHashSet<String>(Arrays.asList("b", "text", "text!c.html")));
+    expected.add(new LinkedHashSet<String>(Arrays.asList("d")));
+    expected.add(new LinkedHashSet<String>());
+    assertEquals(expected, DependencyScanner.splitPoints(src));
+
+    Config config = new Config("x").setSplitNestedDependencies(true);
+    Module module = new Module("x", ResourceURI.create("/x.js"), src);
+    List<Set<String>> splitPoints = new ArrayList<Set<String>>();
+    assertEquals(new LinkedHashSet<String>(Arrays.asList("a", "f")),
+        DependencyCollector.parse(config, module, splitPoints));
+    assertEquals(expected, splitPoints);
+    // nested calls are split points, even if nested dependencies are on
+    assertEquals(new LinkedHashSet<String>(Arrays.asList("a", "f")),
+        DependencyCollector.collect(config.setFindNestedDependencies(true), module));
+  }
+
+  @Test
+  public void ambiguous() {
+    // regexp or division after a closing brace
+    assertNull(DependencyScanner.scan("function f() {}\n/a/.test(x);", false));
+    // ASI or the body of an if statement
+    assertNull(DependencyScanner.scan("if (x)\nrequire(['a']);", false));
+    assertNull(DependencyScanner.scan("foo()\nrequire(['a']);", false));
+    // part of a bigger expression
+    assertNull(DependencyScanner.scan("require(['a']).x;", false));
+    // not a string literal
+    assertNull(DependencyScanner.scan("define([a], function () {});", false));
+    // unterminated
+    assertNull(DependencyScanner.scan("define(['a'], function () {", false));
+    assertNull(DependencyScanner.scan("define(['a]);", false));
+    // rhino is able to resolve all of them
+    assertRhino("function f() {}\n/a/.test(x);");
+    assertRhino("if (x)\nrequire(['a']);");
+    assertRhino("foo()\nrequire(['a']);", "a");
+    assertRhino("require(['a']).x;");
+  }
+
+  @Test
+  public void sameAsRhino() throws IOException {
+    List<File> scripts = new ArrayList<File>();
+    File root = new File(getClass().getResource("/").getFile());
+    for (File file : FileUtils.listFiles(root, new String[]{"js" }, true)) {
+      scripts.add(file);
+    }
+    assertTrue(scripts.size() > 10);
+    int scanned = 0;
+    for (File script : scripts) {
+      String content = FileUtils.readFileToString(script, "UTF-8");
+      for (boolean nested : new boolean[]{false, true }) {
+        Set<String> dependencies = DependencyScanner.scan(content, nested);
+        if (dependencies != null) {
+          Set<String> expected;
+          try {
+            expected = rhino(content, nested);
+          } catch (EvaluatorException ex) {
+            // not supported by Rhino (like r.js)
+            continue;
+          }
+          assertEquals(script.getPath(), new ArrayList<String>(expected),
+              new ArrayList<String>(dependencies));
+          scanned++;
+        }
+      }
+    }
+    // most of the scripts don't need a full parser
+    assertTrue(scanned + " of " + scripts.size() * 2, scanned >= scripts.size());
+  }
+
+  private static void assertScan(final String src, final String... expected) {
+    assertScan(src, false, expected);
+  }
+
+  private static void assertScan(final String src, final boolean nested,
+      final String... expected) {
+    Set<String> dependencies = DependencyScanner.scan(src, nested);
+    assertEquals(Arrays.asList(expected), new ArrayList<String>(dependencies));
+    assertEquals(Arrays.asList(expected), new ArrayList<String>(rhino(src, nested)));
+  }
+
+  private static void assertRhino(final String src, final String... expected) {
+    assertEquals(new LinkedHashSet<String>(Arrays.asList(expected)), rhino(src, false));
+  }
+
+  private static Set<String> rhino(final String src, final boolean nested) {
+    Config config = new Config("x").setFindNestedDependencies(nested);
+    return DependencyCollector.parse(config, new Module("x", ResourceURI.create("/x.js"), src));
+  }
+}
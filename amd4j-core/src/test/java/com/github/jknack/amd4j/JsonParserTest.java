@@ -0,0 +1,64 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.jknack.amd4j.JsonParser.Event;
+
+public class JsonParserTest {
+
+  @Test
+  public void events() throws IOException {
+    JsonParser parser = JsonParser.create("{\"a\": [1, 2.5, \"x\\ty\"], \"b\": {\"c\": true},"
+        + " \"d\": null}", null);
+    assertEquals(Event.START_OBJECT, parser.next());
+    assertEquals(Event.FIELD_NAME, parser.next());
+    assertTrue(parser.textEquals("a"));
+    assertEquals(Event.START_ARRAY, parser.next());
+    assertEquals(Event.VALUE_NUMBER, parser.next());
+    assertEquals(1, parser.getNumber());
+    assertEquals(Event.VALUE_NUMBER, parser.next());
+    assertEquals(2.5, parser.getNumber());
+    assertEquals(Event.VALUE_STRING, parser.next());
+    assertFalse(parser.textEquals("x\\ty"));
+    assertEquals("x\ty", parser.getText());
+    assertEquals(Event.END_ARRAY, parser.next());
+    assertEquals(Event.FIELD_NAME, parser.next());
+    assertEquals("b", parser.getText());
+    assertEquals(Event.START_OBJECT, parser.next());
+    parser.skipChildren();
+    assertEquals(Event.END_OBJECT, parser.getEvent());
+    assertEquals(Event.FIELD_NAME, parser.next());
+    assertEquals(Event.VALUE_NULL, parser.next());
+    assertNull(parser.getString());
+    assertEquals(Event.END_OBJECT, parser.next());
+    assertNull(parser.next());
+  }
+
+  @Test
+  public void tree() throws IOException {
+    Map<String, Object> expected = new LinkedHashMap<String, Object>();
+    expected.put("a", Arrays.asList(1, "\u00e9"));
+    expected.put("b", false);
+    assertEquals(expected,
+        JsonParser.parse(new StringBuilder("{\"a\":[1,\"\\u00e9\"],\"b\":false}")));
+  }
+
+  @Test
+  public void literal() throws IOException {
+    Map<String, Object> expected = new LinkedHashMap<String, Object>();
+    expected.put("a", "b");
+    expected.put("c", Arrays.asList("d"));
+    assertEquals(expected, JsonParser.parseLiteral("require({a: 'b', /* ; */ c: [\"d\",],});",
+        "build.js"));
+  }
+}
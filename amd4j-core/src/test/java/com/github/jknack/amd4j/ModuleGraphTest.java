@@ -0,0 +1,169 @@
+package com.github.jknack.amd4j;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ModuleGraphTest {
+
+  @Test
+  public void acyclic() {
+    Module a = module("a");
+    Module b = module("b");
+    Module c = module("c");
+    a.add(b);
+    a.add(c);
+    b.add(c);
+
+    ModuleGraph graph = new ModuleGraph(a);
+    assertEquals(asList(a, b, c), graph.getModules());
+    assertFalse(graph.hasCycles());
+    assertTrue(graph.getCycles().isEmpty());
+    assertEquals(asList(asList(c), asList(b), asList(a)), graph.getComponents());
+  }
+
+  @Test
+  public void cycles() {
+    Module a = module("a");
+    Module b = module("b");
+    Module c = module("c");
+    Module d = module("d");
+    Module e = module("e");
+    a.add(b);
+    b.add(c);
+    c.add(d);
+    d.add(b);
+    c.add(a);
+    a.add(e);
+    e.add(e);
+
+    ModuleGraph graph = new ModuleGraph(a);
+    assertTrue(graph.hasCycles());
+    assertEquals(asList(asList(e), asList(a, b, c, d)), graph.getComponents());
+    List<List<Module>> cycles = graph.getCycles();
+    assertEquals(asList(asList(e, e), asList(a, b, c, a)), cycles);
+    assertEquals("  e -> e\n  a -> b -> c -> a\n", ModuleGraph.toString(cycles));
+  }
+
+  @Test
+  public void dominators() {
+    // root -> a -> b -> d, root -> c -> d, a -> e -> f, f -> e
+    Module root = new Module("root", ResourceURI.create("/root.js"), "r");
+    Module a = new Module("a", ResourceURI.create("/a.js"), "aa");
+    Module b = new Module("b", ResourceURI.create("/b.js"), "bbbb");
+    Module c = new Module("c", ResourceURI.create("/c.js"), "cccccccc");
+    Module d = new Module("d", ResourceURI.create("/d.js"), "dddddddddddddddd");
+    Module e = new Module("e", ResourceURI.create("/e.js"), "eeeeeeeeeeeeeeeeeeeeeeeeeeeeeeee");
+    Module f = new Module("f", ResourceURI.create("/f.js"), "\u00e9");
+    root.add(a);
+    root.add(c);
+    a.add(b);
+    a.add(e);
+    b.add(d);
+    c.add(d);
+    e.add(f);
+    f.add(e);
+
+    ModuleGraph graph = new ModuleGraph(root);
+    assertEquals(null, graph.getDominator(root));
+    assertEquals(root, graph.getDominator(a));
+    assertEquals(a, graph.getDominator(b));
+    assertEquals(root, graph.getDominator(c));
+    assertEquals(root, graph.getDominator(d));
+    assertEquals(a, graph.getDominator(e));
+    assertEquals(e, graph.getDominator(f));
+
+    assertEquals(asList(a, b, e, f), graph.getDominated(a));
+    assertEquals(asList(d), graph.getDominated(d));
+    assertEquals(graph.getModules(), graph.getDominated(root));
+    assertEquals(1 + 2 + 4 + 8 + 16 + 32 + 2, graph.getRetainedSize(root));
+    assertEquals(2 + 4 + 32 + 2, graph.getRetainedSize(a));
+    assertEquals(32 + 2, graph.getRetainedSize(e));
+
+    // d has two dependents (b and c), e has two dependents (a and f)
+    assertEquals(asList(a, c, b, f), graph.getSplitPoints());
+  }
+
+  @Test
+  public void deepGraph() {
+    Module root = module("m0");
+    Module last = root;
+    for (int i = 1; i < 20000; i++) {
+      Module module = module("m" + i);
+      last.add(module);
+      last = module;
+    }
+    last.add(root);
+
+    ModuleGraph graph = new ModuleGraph(root);
+    assertEquals(1, graph.getComponents().size());
+    assertEquals(20001, graph.getCycles().get(0).size());
+  }
+
+  @Test
+  public void toDot() {
+    Module a = new Module("a", ResourceURI.create("/a.js"), "a");
+    Module b = new Module("b", ResourceURI.create("/b.js"), "\u00e9\u20ac");
+    Module c = new Module("c", ResourceURI.create("text!/c.html"), "\"c\"");
+    a.add(b);
+    a.add(c);
+    b.add(c);
+
+    assertEquals("digraph \"a\" {\n"
+        + "  n0 [label=\"a\\n1 bytes\"];\n"
+        + "  n1 [label=\"b\\n5 bytes\"];\n"
+        + "  n2 [label=\"c\\n3 bytes\"];\n"
+        + "  n0 -> n1;\n"
+        + "  n0 -> n2;\n"
+        + "  n1 -> n2;\n"
+        + "}\n", new ModuleGraph(a).toDot());
+  }
+
+  @Test
+  public void toJson() throws IOException {
+    Module a = new Module("a", ResourceURI.create("/a.js"), "a");
+    Module b = new Module("b", ResourceURI.create("/b.js"), "\ud83d\ude00");
+    Module c = new Module("c", ResourceURI.create("text!/c.html"), "\"c\"");
+    a.add(b);
+    a.add(c);
+    b.add(c);
+    c.add(a);
+
+    String json = new ModuleGraph(a).toJson();
+    assertEquals("{\"modules\": [\n"
+        + "  {\"name\": \"a\", \"uri\": \"/a.js\", \"size\": 1, \"dependencies\": [1, 2]},\n"
+        + "  {\"name\": \"b\", \"uri\": \"/b.js\", \"size\": 4, \"dependencies\": [2]},\n"
+        + "  {\"name\": \"c\", \"uri\": \"text!/c.html\", \"size\": 3, \"dependencies\": [0]}\n"
+        + "]}\n", json);
+    Map<?, ?> graph = (Map<?, ?>) JsonParser.parse(json);
+    assertEquals(3, ((List<?>) graph.get("modules")).size());
+  }
+
+  @Test
+  public void failOnCycles() {
+    Config config = new Config("cycle/a");
+    Module module = new Amd4j().analyze(config);
+    assertEquals(2, new ModuleGraph(module).getCycles().size());
+
+    try {
+      new Amd4j().analyze(config.setFailOnCycles(true));
+      fail("Circular dependencies expected");
+    } catch (IllegalStateException ex) {
+      assertEquals("Circular dependencies found in cycle/a:\n"
+          + "  cycle/d -> cycle/d\n"
+          + "  cycle/a -> cycle/b -> cycle/c -> cycle/a\n", ex.getMessage());
+    }
+  }
+
+  private static Module module(final String name) {
+    return new Module(name, ResourceURI.create(name + ".js"), name);
+  }
+}
@@ -0,0 +1,65 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ModuleTest {
+
+  @Test
+  public void toStringTree() {
+    Module a = module("a");
+    Module b = module("b");
+    Module c = module("c");
+    Module d = module("d");
+    a.add(b);
+    a.add(c);
+    b.add(d);
+    c.add(d);
+
+    assertEquals("/a.js\n"
+        + "   /b.js\n"
+        + "      /d.js\n"
+        + "   /c.js\n"
+        + "      /d.js (*)\n", a.toStringTree());
+  }
+
+  @Test
+  public void toStringTreeWithCycles() {
+    Module a = module("a");
+    Module b = module("b");
+    a.add(b);
+    b.add(a);
+    b.add(b);
+
+    assertEquals("/a.js\n"
+        + "   /b.js\n"
+        + "      /a.js (*)\n"
+        + "      /b.js (*)\n", a.toStringTree());
+  }
+
+  @Test
+  public void toStringTreeIsLinear() {
+    // a diamond chain: every level doubles the number of paths
+    Module root = module("m0");
+    Module last = root;
+    int levels = 64;
+    for (int i = 1; i <= levels; i++) {
+      Module left = module("l" + i);
+      Module right = module("r" + i);
+      Module next = module("m" + i);
+      last.add(left);
+      last.add(right);
+      left.add(next);
+      right.add(next);
+      last = next;
+    }
+
+    String[] lines = root.toStringTree().split("\n");
+    assertEquals(1 + levels * 4, lines.length);
+  }
+
+  private static Module module(final String name) {
+    return new Module(name, ResourceURI.create("/" + name + ".js"), name);
+  }
+}
@@ -1,12 +1,23 @@
 package com.github.jknack.amd4j;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -119,4 +130,353 @@ public class OptimizerTest {
 
     assertTrue(foutput.exists());
   }
+
+  @Test
+  public void gzipAndChecksum() throws IOException, NoSuchAlgorithmException {
+    File foutput = new File("target/z.gzip.js");
+    File fgzip = new File("target/z.gzip.js.gz");
+    foutput.delete();
+    fgzip.delete();
+    new Amd4j()
+        .with(new TextTransformer())
+        .optimize(new Config(".", "z", foutput).setGzip(true).setChecksum(true));
+
+    byte[] output = FileUtils.readFileToByteArray(foutput);
+    InputStream input = new GZIPInputStream(new FileInputStream(fgzip));
+    try {
+      assertEquals(new String(output, "UTF-8"), IOUtils.toString(input, "UTF-8"));
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+    assertEquals(sha1(output) + "  z.gzip.js\n",
+        FileUtils.readFileToString(new File("target/z.gzip.js.sha1")));
+    assertEquals(sha1(FileUtils.readFileToByteArray(fgzip)) + "  z.gzip.js.gz\n",
+        FileUtils.readFileToString(new File("target/z.gzip.js.gz.sha1")));
+  }
+
+  @Test
+  public void writeIfChanged() throws IOException {
+    File dir = new File("target/write-if-changed");
+    FileUtils.deleteQuietly(dir);
+    File foutput = new File(dir, "z.js");
+    Config config = new Config(".", "z", foutput).setGzip(true).setChecksum(true)
+        .setGenerateSourceMaps(true);
+    Amd4j amd4j = new Amd4j().with(new TextTransformer());
+    amd4j.optimize(config);
+
+    String[] names = {"z.js", "z.js.gz", "z.js.map", "z.js.sha1", "z.js.gz.sha1",
+        "z.js.map.sha1" };
+    long lastModified = 1000000000000L;
+    for (String name : names) {
+      assertTrue(new File(dir, name).setLastModified(lastModified));
+    }
+    amd4j.optimize(config);
+    for (String name : names) {
+      assertEquals(name, lastModified, new File(dir, name).lastModified());
+    }
+    assertEquals(names.length, dir.list().length);
+
+    FileUtils.writeStringToFile(foutput, "stale");
+    amd4j.optimize(config);
+    assertTrue(FileUtils.readFileToString(foutput).endsWith("sourceMappingURL=z.js.map"));
+    assertTrue(foutput.lastModified() != lastModified);
+    assertEquals(lastModified, new File(dir, "z.js.gz").lastModified());
+    assertEquals(names.length, dir.list().length);
+  }
+
+  @Test
+  public void hashedOutput() throws IOException, NoSuchAlgorithmException {
+    File dir = new File("target/hashed");
+    FileUtils.deleteQuietly(dir);
+    File manifest = new File(dir, "manifest.json");
+    Amd4j amd4j = new Amd4j().with(new TextTransformer());
+    Module z = amd4j.optimize(new Config(".", "z", new File(dir, "z-${hash}.js"))
+        .setGenerateSourceMaps(true).setManifest(manifest));
+
+    File foutput = z.getOutFile();
+    assertTrue(foutput.getName().matches("z-[0-9a-f]{8}\\.js"));
+    String output = FileUtils.readFileToString(foutput);
+    String footer = "\n//# sourceMappingURL=" + foutput.getName() + ".map";
+    assertTrue(output.endsWith(footer));
+    String hash = sha1(output.substring(0, output.length() - footer.length()).getBytes("UTF-8"));
+    assertEquals("z-" + hash.substring(0, 8) + ".js", foutput.getName());
+    assertTrue(new File(dir, foutput.getName() + ".map").exists());
+    assertEquals("{\n  \"z\": \"" + foutput.getName() + "\"\n}\n",
+        FileUtils.readFileToString(manifest));
+
+    Module q = amd4j.optimize(new Config(".", "q", new File(dir, "js/q-${hash}.js"))
+        .setManifest(manifest));
+    assertEquals("{\n  \"q\": \"js/" + q.getOutFile().getName() + "\",\n  \"z\": \""
+        + foutput.getName() + "\"\n}\n", FileUtils.readFileToString(manifest));
+  }
+
+  @Test
+  public void bundlesConfig() throws IOException {
+    File dir = new File("target/bundles");
+    FileUtils.deleteQuietly(dir);
+    File bundles = new File(dir, "bundles-config.js");
+    Amd4j amd4j = new Amd4j().with(new TextTransformer());
+    amd4j.optimize(new Config(".", "q", new File(dir, "q.bundle.js")).setBundlesConfig(bundles));
+    Module z = amd4j.optimize(new Config(".", "z", new File(dir, "js/z-${hash}.js"))
+        .setBundlesConfig(bundles));
+
+    String zid = "js/" + z.getOutFile().getName().replace(".js", "");
+    String expected = "requirejs.config({\n"
+        + "  \"bundles\": {\n"
+        + "    \"" + zid + "\": [\"z\", \"x\", \"js/y\", \"text\", \"text!js/y.html\", "
+        + "\"text!js/yy.html\", \"text!js/y.xml\", \"js/v\", \"q\", \"text!q.html\"],\n"
+        + "    \"q.bundle\": [\"q\", \"text\", \"text!q.html\"]\n"
+        + "  }\n"
+        + "});\n";
+    assertEquals(expected, FileUtils.readFileToString(bundles));
+
+    // a new version of z replaces the old bundle
+    FileUtils.writeStringToFile(bundles, expected.replace(zid, "js/z-00000000"));
+    amd4j.optimize(new Config(".", "z", new File(dir, "js/z-${hash}.js"))
+        .setBundlesConfig(bundles));
+    assertEquals(expected, FileUtils.readFileToString(bundles));
+  }
+
+  @Test
+  public void splitNestedDependencies() throws IOException {
+    File dir = new File("target/split");
+    FileUtils.deleteQuietly(dir);
+    File bundles = new File(dir, "bundles-config.js");
+    Module main = new Amd4j().optimize(new Config(".", "split/main", new File(dir, "main.js"))
+        .setSplitNestedDependencies(true).setBundlesConfig(bundles));
+
+    assertEquals("[split/b, split/c, split/e]", main.getChunks().toString());
+    assertEquals(new File(dir, "main-1.js"), main.getChunks().get(1).getOutFile());
+    assertModules(new File(dir, "main.js"), "split/a", "split/main");
+    // a is loaded by main
+    assertModules(new File(dir, "main-1.js"), "split/d", "split/b", "split/c");
+    // a and d are loaded by main and main-1
+    assertModules(new File(dir, "main-2.js"), "split/e");
+    assertEquals(4, dir.list().length);
+    assertEquals("requirejs.config({\n"
+        + "  \"bundles\": {\n"
+        + "    \"main\": [\"split/main\", \"split/a\"],\n"
+        + "    \"main-1\": [\"split/b\", \"split/d\", \"split/c\"],\n"
+        + "    \"main-2\": [\"split/e\"]\n"
+        + "  }\n"
+        + "});\n", FileUtils.readFileToString(bundles));
+  }
+
+  private static void assertModules(final File file, final String... modules)
+      throws IOException {
+    String output = FileUtils.readFileToString(file);
+    assertEquals(output, modules.length, output.split("\ndefine\\(").length - 1);
+    for (String module : modules) {
+      assertTrue(output, output.contains("\ndefine('" + module + "'"));
+    }
+  }
+
+  @Test
+  public void reuseOptimizer() throws IOException {
+    File dir = new File("target/reuse");
+    FileUtils.deleteQuietly(dir);
+    File bundles = new File(dir, "bundles-config.js");
+    Config config = new Config(".", "x", new File(dir, "out.js")).setBundlesConfig(bundles)
+        .snapshot();
+    Amd4j amd4j = new Amd4j().with(new TextTransformer());
+    Optimizer optimizer = new Optimizer(config, Arrays.<Transformer> asList(new TextTransformer()));
+    optimizer.walk(amd4j.analyze("x"));
+    optimizer.walk(amd4j.analyze("q"));
+
+    assertEquals("requirejs.config({\n"
+        + "  \"bundles\": {\n"
+        + "    \"out\": [\"q\", \"text\", \"text!q.html\"]\n"
+        + "  }\n"
+        + "});\n", FileUtils.readFileToString(bundles));
+  }
+
+  @Test
+  public void splitNestedDependenciesRequiresBundlesConfig() throws IOException {
+    File output = new File("target/split-no-bundles/main.js");
+    FileUtils.deleteQuietly(output.getParentFile());
+    try {
+      new Amd4j().optimize(new Config(".", "split/main", output)
+          .setSplitNestedDependencies(true));
+      fail("bundlesConfig is required");
+    } catch (IllegalArgumentException ex) {
+      assertEquals("The following option is required by splitNestedDependencies: bundlesConfig",
+          ex.getMessage());
+    }
+    assertFalse(output.exists());
+  }
+
+  @Test
+  public void sourceMaps() throws IOException {
+    File foutput = new File("target/z.map.js");
+    File fmap = new File("target/z.map.js.map");
+    foutput.delete();
+    fmap.delete();
+    new Amd4j()
+        .with(new TextTransformer())
+        .optimize(new Config(".", "z", foutput).setGenerateSourceMaps(true));
+
+    String output = FileUtils.readFileToString(foutput);
+    assertTrue(output.endsWith("\n//# sourceMappingURL=z.map.js.map"));
+    String map = FileUtils.readFileToString(fmap);
+    assertTrue(map.startsWith("{\"version\":3,\"file\":\"z.map.js\",\"sources\":["));
+    assertTrue(map.contains("\"z.js\""));
+    assertTrue(map.contains("\"q.html\""));
+    // first line is empty, second line is the first line of the first module
+    assertTrue(map.contains("\"mappings\":\";AAAA;"));
+  }
+
+  @Test
+  public void sourceMapsOfTransformedModules() throws IOException {
+    File foutput = new File("target/map.main.js");
+    new Amd4j()
+        .with(new AmdTransformer())
+        .optimize(new Config(".", "map/main", foutput).setGenerateSourceMaps(true)
+            .shim("map/g", new Shim("G")));
+
+    String[] lines = FileUtils.readFileToString(foutput).split("\n", -1);
+    String map = FileUtils.readFileToString(new File("target/map.main.js.map"));
+    // the transformer inserts the name and the dependencies
+    assertEquals("define('map/a',[],function () {", lines[1]);
+    assertEquals("map/a.js:0:0", original(map, 1, 0));
+    assertEquals("map/a.js:0:7", original(map, 1, lines[1].indexOf("function")));
+    assertEquals("map/a.js:1:9", original(map, 2, lines[2].indexOf("'a'")));
+    // the shim wrapper is added after the original lines and it isn't mapped
+    assertEquals("var G = {", lines[5]);
+    assertEquals("map/g.js:0:4", original(map, 5, 4));
+    assertEquals("map/g.js:1:2", original(map, 6, 2));
+    int shim = Arrays.asList(lines).indexOf("define(\"map/g\",[], (function (global) {");
+    assertEquals(9, shim);
+    assertEquals(null, original(map, shim, 0));
+    assertEquals(null, original(map, shim + 1, 4));
+    int main = shim + 7;
+    assertTrue(lines[main].startsWith("define('map/main',['map/a', 'map/g'], function (a, g) {"));
+    assertEquals("map/main.js:0:27", original(map, main, lines[main].indexOf("function")));
+  }
+
+  @Test
+  public void sourceMapsOfWhiteMinifier() throws IOException {
+    File foutput = new File("target/map.main.white.js");
+    new Amd4j()
+        .with(new AmdTransformer())
+        .optimize(new Config(".", "map/main", foutput).setGenerateSourceMaps(true)
+            .setOptimize("white").shim("map/g", new Shim("G")));
+
+    String output = FileUtils.readFileToString(foutput);
+    String map = FileUtils.readFileToString(new File("target/map.main.white.js.map"));
+    assertTrue(output.endsWith("\n//# sourceMappingURL=map.main.white.js.map"));
+    String[] lines = output.split("\n");
+    assertEquals(2, lines.length);
+    String line = lines[0];
+    assertTrue(line, line.startsWith("define('map/a',[], function(){ return'a';});"));
+    assertEquals("map/a.js:0:0", original(map, 0, 0));
+    assertEquals("map/a.js:0:7", original(map, 0, line.indexOf("function")));
+    assertEquals("map/a.js:1:9", original(map, 0, line.indexOf("'a'")));
+    assertEquals("map/g.js:0:4", original(map, 0, line.indexOf("G=")));
+    assertEquals("map/g.js:1:2", original(map, 0, line.indexOf("name:")));
+    assertEquals("map/main.js:0:8", original(map, 0, line.indexOf("'map/a','map/g'")));
+    assertEquals("map/main.js:0:27", original(map, 0, line.indexOf("function(a")));
+    assertEquals("map/main.js:1:15", original(map, 0, line.indexOf("name;")));
+  }
+
+  @Test
+  public void sourceMapsOfWhiteMinifierWithDivisions() throws IOException {
+    File foutput = new File("target/map.div.white.js");
+    new Amd4j()
+        .with(new AmdTransformer())
+        .optimize(new Config(".", "map/div", foutput).setGenerateSourceMaps(true)
+            .setOptimize("white"));
+
+    String map = FileUtils.readFileToString(new File("target/map.div.white.js.map"));
+    String line = FileUtils.readFileToString(foutput).split("\n")[0];
+    assertTrue(line, line.contains("var half=10/2, ratio= half/5; return ratio/ /x/.source"));
+    assertEquals("map/div.js:1:13", original(map, 0, line.indexOf("10")));
+    assertEquals("map/div.js:1:18", original(map, 0, line.indexOf("2,")));
+    assertEquals("map/div.js:1:21", original(map, 0, line.indexOf("ratio")));
+    assertEquals("map/div.js:1:29", original(map, 0, line.indexOf("half/")));
+    assertEquals("map/div.js:1:36", original(map, 0, line.indexOf("5;")));
+    assertEquals("map/div.js:2:9", original(map, 0, line.lastIndexOf("ratio")));
+    assertEquals("map/div.js:2:21", original(map, 0, line.indexOf("source")));
+  }
+
+  @Test
+  public void noSourceMapWithoutMappings() throws IOException {
+    File foutput = new File("target/map.none.js");
+    File fmap = new File("target/map.none.js.map");
+    fmap.delete();
+    new Amd4j()
+        .with("trim", new Minifier() {
+          @Override
+          public CharSequence minify(final Config config, final CharSequence input) {
+            return input.toString().trim();
+          }
+        })
+        .optimize(new Config(".", "map/a", foutput).setGenerateSourceMaps(true)
+            .setOptimize("trim"));
+
+    assertFalse(FileUtils.readFileToString(foutput).contains("sourceMappingURL"));
+    assertFalse(fmap.exists());
+  }
+
+  /**
+   * Find the original position of an output's position in a source map.
+   *
+   * @return The source's name, line and column, as: <code>source:line:column</code>.
+   */
+  private static String original(final String map, final int line, final int column) {
+    int[] found = null;
+    for (int[] mapping : mappings(map)) {
+      if (mapping[0] == line && mapping[1] <= column) {
+        found = mapping;
+      }
+    }
+    if (found == null) {
+      return null;
+    }
+    String sources = map.substring(map.indexOf("\"sources\":[") + 11, map.indexOf("]"));
+    String source = sources.split(",")[found[2]];
+    return source.substring(1, source.length() - 1) + ":" + found[3] + ":"
+        + (found[4] + column - found[1]);
+  }
+
+  /**
+   * Decode the mappings of a source map.
+   *
+   * @return The mappings as: line, column, source, source line and source column.
+   */
+  private static List<int[]> mappings(final String map) {
+    String base64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    String key = "\"mappings\":\"";
+    String mappings = map.substring(map.indexOf(key) + key.length(), map.lastIndexOf('"'));
+    List<int[]> result = new ArrayList<int[]>();
+    int[] mapping = new int[5];
+    int i = 0;
+    while (i < mappings.length()) {
+      char ch = mappings.charAt(i);
+      if (ch == ';') {
+        mapping[0]++;
+        mapping[1] = 0;
+        i++;
+      } else if (ch == ',') {
+        i++;
+      } else {
+        for (int field = 1; field < mapping.length; field++) {
+          int value = 0;
+          int shift = 0;
+          int digit;
+          do {
+            digit = base64.indexOf(mappings.charAt(i++));
+            value += (digit & 31) << shift;
+            shift += 5;
+          } while ((digit & 32) != 0);
+          mapping[field] += (value & 1) == 1 ? -(value >> 1) : value >> 1;
+        }
+        result.add(mapping.clone());
+      }
+    }
+    return result;
+  }
+
+  private static String sha1(final byte[] bytes) throws NoSuchAlgorithmException {
+    return BundleWriter.toHex(MessageDigest.getInstance("SHA-1").digest(bytes));
+  }
 }
@@ -0,0 +1,81 @@
+package com.github.jknack.amd4j;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ReachabilityIndexTest {
+
+  @Test
+  public void entries() {
+    Module home = module("home");
+    Module page = module("page");
+    Module a = module("a");
+    Module b = module("b");
+    Module c = module("c");
+    Module d = module("d");
+    home.add(a);
+    home.add(c);
+    a.add(b);
+    b.add(a);
+    page.add(c);
+    c.add(d);
+
+    ReachabilityIndex index = new ReachabilityIndex(home, page);
+    assertEquals(asList(home, a, b, c, d, page), index.getModules());
+    assertEquals(asList(home, a, b, c, d), index.getDependencies(home));
+    assertEquals(asList(a, b), index.getDependencies(b));
+    assertEquals(asList(c, d), index.getDependencies(c));
+    assertEquals(asList(home, c, d, page), index.getDependents(d));
+    assertEquals(asList(home, a, b), index.getDependents(a));
+    assertEquals(asList(home, page), index.getEntries(d));
+    assertEquals(asList(home), index.getEntries(b));
+    assertEquals(asList(page), index.getEntries(page));
+    assertTrue(index.reaches(b, a));
+    assertTrue(index.reaches(home, d));
+    assertTrue(index.reaches(d, d));
+    assertFalse(index.reaches(c, a));
+    assertFalse(index.reaches(page, home));
+    assertTrue(index.contains(d));
+    assertFalse(index.contains(module("x")));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void unknownModule() {
+    new ReachabilityIndex(module("a")).getDependencies(module("x"));
+  }
+
+  @Test
+  public void sameAsWalk() {
+    Random random = new Random(7);
+    List<Module> modules = new ArrayList<Module>();
+    for (int i = 0; i < 200; i++) {
+      modules.add(module("m" + i));
+    }
+    for (int i = 0; i < 400; i++) {
+      modules.get(random.nextInt(200)).add(modules.get(random.nextInt(200)));
+    }
+    List<Module> entries = modules.subList(0, 10);
+    ReachabilityIndex index = new ReachabilityIndex(entries);
+    for (Module module : index.getModules()) {
+      List<Module> expected = new ArrayList<Module>(module.getDependencies(true));
+      List<Module> dependencies = index.getDependencies(module);
+      assertEquals(expected.size(), dependencies.size());
+      assertTrue(dependencies.containsAll(expected));
+      for (Module dependency : dependencies) {
+        assertTrue(index.getDependents(dependency).contains(module));
+      }
+    }
+  }
+
+  private static Module module(final String name) {
+    return new Module(name, ResourceURI.create("/" + name + ".js"), name);
+  }
+}
@@ -0,0 +1,41 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class ResourceURITest {
+
+  @Test
+  public void create() {
+    assertEquals("/x.js", ResourceURI.create(".", "x.js").toString());
+    assertEquals("/js/x.js", ResourceURI.create("js", "/x.js").toString());
+    ResourceURI text = ResourceURI.create("/js/", "text!/x.html");
+    assertEquals("text", text.getPrefix());
+    assertEquals("/js/x.html", text.getPath());
+    assertNull(ResourceURI.create("/js/", "x.html").getPrefix());
+  }
+
+  @Test
+  public void equality() {
+    ResourceURI uri = ResourceURI.create("js", "text!x.html");
+    assertEquals(ResourceURI.create("/js/", "text!x.html"), uri);
+    assertEquals(ResourceURI.create("/js/", "text!x.html").hashCode(), uri.hashCode());
+    assertFalse(ResourceURI.create("/js/", "x.html").equals(uri));
+    assertFalse(ResourceURI.create("/js/", "css!x.html").equals(uri));
+  }
+
+  @Test
+  public void pool() {
+    ResourceURI.Pool pool = new ResourceURI.Pool();
+    ResourceURI uri = pool.create("js", "text!x.html");
+    assertSame(uri, pool.create("/js/", "text!x.html"));
+    assertSame(uri, pool.create("text!/js/x.html"));
+    assertEquals(ResourceURI.create("js", "text!x.html"), uri);
+    assertSame(pool.create(".", "x.js"), pool.create("/", "/x.js"));
+    assertEquals(2, pool.size());
+  }
+}
@@ -0,0 +1,42 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class SourceMapTest {
+
+  @Test
+  public void mappings() {
+    SourceMap map = new SourceMap();
+    int source = map.addSource("a.js", "var  a;\n\nfoo(a);");
+    map.addMapping(1, 0, source, 2, 0)
+        .addMapping(0, 4, source, 0, 5)
+        .addMapping(0, 0, source, 0, 0);
+
+    assertEquals("{\"version\":3,\"file\":\"a.min.js\",\"sources\":[\"a.js\"],"
+        + "\"sourcesContent\":[\"var  a;\\n\\nfoo(a);\"],\"names\":[],"
+        + "\"mappings\":\"AAAA,IAAK;AAEL\"}", map.toJson("a.min.js"));
+  }
+
+  @Test
+  public void compose() {
+    SourceMap map = new SourceMap();
+    int a = map.addSource("a.js", null);
+    int b = map.addSource("b.js", null);
+    // bundle: line 1 is a.js, line 2 is b.js
+    map.addMapping(1, 0, a, 0, 0).addMapping(2, 0, b, 0, 0).addMapping(2, 10, b, 0, 8);
+
+    // minified: everything in line 0
+    SourceMap minified = new SourceMap();
+    int bundle = minified.addSource("bundle.js", null);
+    minified.addMapping(0, 0, bundle, 1, 4)
+        .addMapping(0, 6, bundle, 2, 3)
+        .addMapping(0, 9, bundle, 2, 12);
+
+    map.compose(minified);
+    assertEquals("{\"version\":3,\"file\":\"a.min.js\",\"sources\":[\"a.js\",\"b.js\"],"
+        + "\"sourcesContent\":[null,null],\"names\":[],"
+        + "\"mappings\":\"AAAI,MCAD,GAAO\"}", map.toJson("a.min.js"));
+  }
+}
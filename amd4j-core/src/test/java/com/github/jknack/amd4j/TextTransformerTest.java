@@ -0,0 +1,48 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class TextTransformerTest {
+
+  @Test
+  public void escape() {
+    assertEscape("");
+    assertEscape("plain text");
+    assertEscape("a'b\\c\"d\n\t\b\f\r\u0001\u007f\u0080\u00e9\u20ac\ud83d\ude00x\ud800y</");
+  }
+
+  @Test
+  public void escapeRandom() {
+    Random random = new Random(7341);
+    for (int i = 0; i < 1000; i++) {
+      char[] chars = new char[random.nextInt(64)];
+      for (int j = 0; j < chars.length; j++) {
+        // mostly ASCII, some control and non-ASCII chars
+        chars[j] = (char) (random.nextInt(4) == 0 ? random.nextInt(0x10000) : random.nextInt(0x80));
+      }
+      assertEscape(new String(chars));
+    }
+  }
+
+  @Test
+  public void transform() throws IOException {
+    String html = FileUtils.readFileToString(new File("src/test/resources/q.html"));
+    StringBuilder define = new TextTransformer().transform(new Config("q"), "text!q.html",
+        new StringBuilder(html));
+    assertEquals("define([],function () { return '"
+        + TextTransformer.ESCAPE_ECMASCRIPT.translate(html) + "';});\n", define.toString());
+  }
+
+  private static void assertEscape(final String input) {
+    StringBuilder out = new StringBuilder();
+    TextTransformer.escape(input, out);
+    assertEquals(TextTransformer.ESCAPE_ECMASCRIPT.translate(input), out.toString());
+  }
+}
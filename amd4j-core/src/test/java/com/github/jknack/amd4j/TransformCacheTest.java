@@ -0,0 +1,73 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class TransformCacheTest {
+
+  private static class CountingTransformer extends TextTransformer {
+    private int count;
+
+    @Override
+    public StringBuilder transform(final Config config, final String name,
+        final StringBuilder content) {
+      count++;
+      return super.transform(config, name, content);
+    }
+  }
+
+  @Test
+  public void reuseTransformedModules() throws IOException {
+    File expected = new File("target/z.nocache.js");
+    new Amd4j()
+        .with(new TextTransformer())
+        .optimize(new Config(".", "z", expected));
+
+    TransformCache cache = new TransformCache(100);
+    CountingTransformer transformer = new CountingTransformer();
+    File output = new File("target/z.cache.js");
+    Amd4j amd4j = new Amd4j()
+        .with(transformer)
+        .with(cache);
+    amd4j.optimize(new Config(".", "z", output));
+    int count = transformer.count;
+    assertEquals(FileUtils.readFileToString(expected), FileUtils.readFileToString(output));
+
+    amd4j.optimize(new Config(".", "z", output));
+    assertEquals(count, transformer.count);
+    assertEquals(FileUtils.readFileToString(expected), FileUtils.readFileToString(output));
+
+    // options are part of the key
+    amd4j.optimize(new Config(".", "z", output).setInlineText(false));
+    assertEquals(count * 2, transformer.count);
+  }
+
+  @Test
+  public void lru() {
+    TransformCache cache = new TransformCache(2);
+    cache.put("a", "A");
+    cache.put("b", "B");
+    cache.get("a");
+    cache.put("c", "C");
+    assertNotNull(cache.get("a"));
+    assertNull(cache.get("b"));
+    assertNotNull(cache.get("c"));
+  }
+
+  @Test
+  public void disk() throws IOException {
+    File directory = new File("target/transform-cache");
+    FileUtils.deleteDirectory(directory);
+    directory.mkdirs();
+    new TransformCache(1, directory).put("a", "A");
+    assertEquals("A", new TransformCache(1, directory).get("a"));
+    assertNull(new TransformCache(1, directory).get("b"));
+  }
+}
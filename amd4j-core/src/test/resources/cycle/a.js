@@ -0,0 +1,3 @@
+define(["cycle/b", "cycle/d"], function (b, d) {
+  return {};
+});
@@ -0,0 +1,3 @@
+define(["cycle/c"], function (c) {
+  return {};
+});
@@ -0,0 +1,3 @@
+define(["cycle/a"], function (a) {
+  return {};
+});
@@ -0,0 +1,3 @@
+define(["cycle/d"], function (d) {
+  return {};
+});
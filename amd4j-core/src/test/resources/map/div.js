@@ -0,0 +1,4 @@
+define(function () {
+  var half = 10 / 2, ratio = half / 5;
+  return ratio / /x/.source.length;
+});
@@ -0,0 +1,3 @@
+var G = {
+  name: 'g'
+};
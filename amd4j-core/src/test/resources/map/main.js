@@ -0,0 +1,3 @@
+define(['map/a', 'map/g'], function (a, g) {
+  return a + g.name;
+});
@@ -0,0 +1,4 @@
+define(["split/a", "split/d"], function (a, d) {
+  require(["./e"], function (e) {
+  });
+});
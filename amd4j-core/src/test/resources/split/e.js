@@ -0,0 +1,3 @@
+define(["split/a", "split/d"], function (a, d) {
+  return "e";
+});
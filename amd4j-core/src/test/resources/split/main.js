@@ -0,0 +1,6 @@
+define(["split/a"], function (a) {
+  require(["split/b", "split/c"], function (b, c) {
+  });
+  require(["split/a"]);
+  return a;
+});
@@ -24,13 +24,104 @@ import static org.apache.commons.lang3.Validate.isTrue;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.Log;
 
 public abstract class Amd4jMojo extends AbstractMojo {
+
+  /**
+   * The outcome of a script execution. Messages are buffered per script and printed in the same
+   * order of {@link Amd4jMojo#names}, so the output is deterministic when scripts run in
+   * parallel.
+   */
+  private static final class Script {
+
+    /**
+     * The script's name.
+     */
+    private final String name;
+
+    /**
+     * The buffered messages, debug messages are prefixed with <code>null</code>.
+     */
+    private final List<String> messages = new ArrayList<String>();
+
+    /**
+     * The error message or <code>null</code>.
+     */
+    private String message;
+
+    /**
+     * The error cause or <code>null</code>.
+     */
+    private Exception failure;
+
+    /**
+     * Creates a new {@link Script}.
+     *
+     * @param name The script's name.
+     */
+    public Script(final String name) {
+      this.name = name;
+    }
+
+    /**
+     * Buffer a message.
+     *
+     * @param debug True, for debug messages.
+     * @param message The message.
+     */
+    public void log(final boolean debug, final String message) {
+      if (debug) {
+        messages.add(null);
+      }
+      messages.add(message);
+    }
+
+    /**
+     * Print the buffered messages.
+     *
+     * @param log The maven log.
+     */
+    public void flush(final Log log) {
+      boolean debug = false;
+      for (String message : messages) {
+        if (message == null) {
+          debug = true;
+        } else {
+          if (debug) {
+            log.debug(message);
+          } else {
+            log.info(message);
+          }
+          debug = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * The max number of transformed modules to keep in memory.
+   */
+  private static final int CACHE_SIZE = 1024;
+
+  /**
+   * Transformed modules, shared by all the executions of the plugin in the same JVM.
+   */
+  private static final TransformCache CACHE = new TransformCache(CACHE_SIZE);
+
   /**
    * The file to process.
    *
@@ -60,30 +151,96 @@ public abstract class Amd4jMojo extends AbstractMojo {
    */
   protected Boolean findNestedDependencies;
 
+  /**
+   * Fail if the module graph has circular dependencies.
+   *
+   * @parameter
+   */
+  protected Boolean failOnCycles;
+
+  /**
+   * The number of scripts to process in parallel. Default: the number of available processors.
+   *
+   * @parameter expression="${amd4j.threads}"
+   */
+  protected Integer threads;
+
+  /**
+   * Keep transformed modules in this directory, so they are reused between builds. Optional.
+   *
+   * @parameter expression="${amd4j.cacheDirectory}"
+   */
+  protected File cacheDirectory;
+
+  /**
+   * The script being processed by the current thread.
+   */
+  private final ThreadLocal<Script> current = new ThreadLocal<Script>();
+
   @Override
   public final void execute() throws MojoExecutionException, MojoFailureException {
-    String basedir = System.getProperty("user.dir");
+    final String basedir = System.getProperty("user.dir");
 
-    Amd4j amd4j = new Amd4j()
+    final Amd4j amd4j = configure(new Amd4j()
         .with(new TextTransformer())
-        .with(new FileResourceLoader(new File(basedir)));
+        .with(new FileResourceLoader(new File(basedir)))
+        .with(cacheDirectory == null ? CACHE : new TransformCache(CACHE_SIZE, cacheDirectory)));
 
-    for (String name : new LinkedHashSet<String>(asList(names))) {
-      execute(amd4j, basedir, name);
+    Set<String> scripts = new LinkedHashSet<String>(asList(names));
+    int poolSize = threads == null ? Runtime.getRuntime().availableProcessors() : threads;
+    if (poolSize <= 0) {
+      throw new MojoExecutionException("The threads option must be greater than 0: " + threads);
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(poolSize, scripts.size()));
+    try {
+      List<Future<Script>> results = new ArrayList<Future<Script>>();
+      for (final String name : scripts) {
+        results.add(executor.submit(new Callable<Script>() {
+          @Override
+          public Script call() {
+            return execute(amd4j, basedir, name);
+          }
+        }));
+      }
+      for (Future<Script> result : results) {
+        Script script = result.get();
+        script.flush(getLog());
+        if (script.failure != null) {
+          processError(script.name, script.message, script.failure);
+        }
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new MojoExecutionException("Interrupted while processing: " + scripts, ex);
+    } catch (ExecutionException ex) {
+      throw new MojoExecutionException("Unexpected error: " + ex.getCause().getMessage(),
+          ex.getCause());
+    } finally {
+      executor.shutdownNow();
     }
   }
 
+  /**
+   * Customize the {@link Amd4j} instance, like registering additional minifiers.
+   *
+   * @param amd4j The default {@link Amd4j} instance.
+   * @return The {@link Amd4j} instance to use.
+   */
+  protected Amd4j configure(final Amd4j amd4j) {
+    return amd4j;
+  }
+
   /**
    * Execute the command.
    *
    * @param amd4j An {@link Amd4j} instance.
    * @param basedir The working directory.
    * @param name The script's name to execute.
-   * @throws IOException If something goes wrong.
+   * @return The script's outcome.
    */
-  protected final void execute(final Amd4j amd4j, final String basedir, final String name)
-      throws MojoExecutionException,
-      MojoFailureException {
+  private Script execute(final Amd4j amd4j, final String basedir, final String name) {
+    Script script = new Script(name);
+    current.set(script);
     try {
       Config config = merge(name, newConfig());
       if (isEmpty(config.getBaseUrl())) {
@@ -92,18 +249,36 @@ public abstract class Amd4jMojo extends AbstractMojo {
         // remove the user.dir prefix
         config.setBaseUrl(config.getBaseUrl().replace(basedir, ""));
       }
-      getLog().debug("options:\n" + config + "\n");
+      dprintf("options:\n%s\n", config);
       isTrue(!isEmpty(config.getName()), "The following option is required: %s", "name");
       doExecute(amd4j, config);
     } catch (FileNotFoundException ex) {
-      processError(name, "File not found: " + ex.getMessage(), ex);
+      failure(script, "File not found: " + ex.getMessage(), ex);
     } catch (IOException ex) {
-      processError(name, "I/O error: " + ex.getMessage(), ex);
+      failure(script, "I/O error: " + ex.getMessage(), ex);
     } catch (IllegalArgumentException ex) {
-      processError(name, ex.getMessage(), ex);
+      failure(script, ex.getMessage(), ex);
+    } catch (IllegalStateException ex) {
+      failure(script, ex.getMessage(), ex);
     } catch (Exception ex) {
-      processError(name, "Unexpected error: " + ex.getMessage(), ex);
+      failure(script, "Unexpected error: " + ex.getMessage(), ex);
+    } finally {
+      current.remove();
     }
+    return script;
+  }
+
+  /**
+   * Record a script failure. The failure is reported by
+   * {@link #processError(String, String, Exception)}.
+   *
+   * @param script The script.
+   * @param message The error message.
+   * @param cause The error cause.
+   */
+  private static void failure(final Script script, final String message, final Exception cause) {
+    script.message = message;
+    script.failure = cause;
   }
 
   /**
@@ -166,6 +341,9 @@ public abstract class Amd4jMojo extends AbstractMojo {
     if (findNestedDependencies != null) {
       config.setFindNestedDependencies(findNestedDependencies.booleanValue());
     }
+    if (failOnCycles != null) {
+      config.setFailOnCycles(failOnCycles.booleanValue());
+    }
     // merge paths
     for (String path : paths) {
       int idx = path.indexOf(":");
@@ -184,7 +362,7 @@ public abstract class Amd4jMojo extends AbstractMojo {
    * @param args The message's arguments.
    */
   protected void printf(final String message, final Object... args) {
-    getLog().info(String.format(message, args));
+    log(false, String.format(message, args));
   }
 
   /**
@@ -194,6 +372,25 @@ public abstract class Amd4jMojo extends AbstractMojo {
    * @param args The message's arguments.
    */
   protected void dprintf(final String message, final Object... args) {
-    getLog().debug(String.format(message, args));
+    if (getLog().isDebugEnabled()) {
+      log(true, String.format(message, args));
+    }
+  }
+
+  /**
+   * Print a message to the maven output or buffer it if a script is being processed.
+   *
+   * @param debug True, for debug messages.
+   * @param message The message.
+   */
+  private void log(final boolean debug, final String message) {
+    Script script = current.get();
+    if (script != null) {
+      script.log(debug, message);
+    } else if (debug) {
+      getLog().debug(message);
+    } else {
+      getLog().info(message);
+    }
   }
 }
@@ -18,6 +18,7 @@
 package com.github.jknack.amd4j;
 
 import java.io.IOException;
+import java.util.List;
 
 /**
  * Analyze an AMD script file.
@@ -35,6 +36,10 @@ public class AnalizeMojo extends Amd4jMojo {
     Module module = amd4j.analyze(config);
     long end = System.currentTimeMillis();
     printf("result:\n%s", module.toStringTree().trim());
+    List<List<Module>> cycles = new ModuleGraph(module).getCycles();
+    if (!cycles.isEmpty()) {
+      printf("circular dependencies:\n%s", ModuleGraph.toString(cycles));
+    }
     printf("analysis of %s took %sms", module.uri, end - start);
   }
 
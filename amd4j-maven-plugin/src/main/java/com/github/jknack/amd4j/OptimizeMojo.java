@@ -22,7 +22,19 @@ import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.Validate.isTrue;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Properties;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
 
 import com.google.javascript.jscomp.CompilationLevel;
 
@@ -35,12 +47,25 @@ import com.google.javascript.jscomp.CompilationLevel;
  */
 public class OptimizeMojo extends Amd4jMojo {
 
-  static {
-    Minifier.register("closure.white", new ClosureMinifier(CompilationLevel.WHITESPACE_ONLY));
-    Minifier.register("closure", new ClosureMinifier(CompilationLevel.SIMPLE_OPTIMIZATIONS));
-    Minifier.register("closure.advanced", new ClosureMinifier(
-        CompilationLevel.ADVANCED_OPTIMIZATIONS));
-  }
+  /**
+   * The fingerprint's file extension. A fingerprint is saved next to each output.
+   */
+  private static final String FINGERPRINT = ".fingerprint";
+
+  /**
+   * The fingerprint's key for the effective configuration options.
+   */
+  private static final String CONFIG = "config";
+
+  /**
+   * The fingerprint's key for the output's file (with placeholders resolved).
+   */
+  private static final String OUTPUT = "output";
+
+  /**
+   * Parsed build files, shared by all the executions of the plugin in the same JVM.
+   */
+  private static final ConfigCache CONFIGS = new ConfigCache();
 
   /**
    * The output's file.
@@ -52,9 +77,29 @@ public class OptimizeMojo extends Amd4jMojo {
   private String out;
 
   /**
-   * The finale output.
+   * A JSON file mapping script names to output's files. Useful if the output has a
+   * <code>${hash}</code> placeholder.
+   *
+   * @parameter
    */
-  private String fout;
+  private File manifest;
+
+  /**
+   * A JavaScript file with the require.js <code>bundles</code> configuration of the outputs. It
+   * should be saved in the <code>baseUrl</code> of the application.
+   *
+   * @parameter
+   */
+  private File bundlesConfig;
+
+  /**
+   * Optimize the dependencies of nested require calls into lazy loaded chunks:
+   * <code>&lt;out&gt;-&lt;n&gt;.js</code>. Requires a <code>bundlesConfig</code>. Default is:
+   * false.
+   *
+   * @parameter
+   */
+  private Boolean splitNestedDependencies;
 
   /**
    * Inline text in the final output. Default: true.
@@ -84,17 +129,168 @@ public class OptimizeMojo extends Amd4jMojo {
    */
   private String optimize;
 
+  /**
+   * Write a .gz file next to the output. Default is: false.
+   *
+   * @parameter
+   */
+  private Boolean gzip;
+
+  /**
+   * Write a .sha1 checksum file next to each output. Default is: false.
+   *
+   * @parameter
+   */
+  private Boolean checksum;
+
+  /**
+   * Write a .map source map file next to each output. Default is: false.
+   *
+   * @parameter
+   */
+  private Boolean generateSourceMaps;
+
+  /**
+   * Optimize the scripts even if the output is up to date.
+   *
+   * @parameter expression="${amd4j.force}" default-value="false"
+   */
+  private boolean force;
+
+  /**
+   * The plugin's version.
+   *
+   * @parameter default-value="${plugin.version}"
+   * @readonly
+   */
+  private String pluginVersion;
+
   @Override
   public void doExecute(final Amd4j amd4j, final Config config) throws IOException {
-    isTrue(config.getOut() != null, "The following option is required: %s", "out");
+    isTrue(!isEmpty(out), "The following option is required: %s", "out");
     isTrue(!isEmpty(config.getBaseUrl()), "The following option is required: %s", "baseUrl");
+    File output = new File(output(config.getName()));
+    File fingerprint = new File(output.getPath() + FINGERPRINT);
+    String options = options(config);
+    File written = force ? null : upToDate(fingerprint, options, config);
+    if (written != null) {
+      if (config.getManifest() != null) {
+        // the manifest might be shared and rewritten by other builds, keep the entry of the script
+        BundleWriter.manifest(config.getManifest(), config.getName(), written);
+      }
+      printf("%s -> %s is up to date", config.getName(), written);
+      return;
+    }
+    output.getParentFile().mkdirs();
+    config.setOut(output);
     dprintf("optimizing %s...", config.getName());
     long start = System.currentTimeMillis();
     Module module = amd4j.optimize(config);
     long end = System.currentTimeMillis();
-    dprintf("result:\n%s", module.toStringTree().trim());
+    if (getLog().isDebugEnabled()) {
+      // don't build the tree if it isn't going to be printed
+      dprintf("result:\n%s", module.toStringTree().trim());
+    }
     printf("found %s dependencies for %s -> %s took %sms", module.getDependencies(true).size(),
-        config.getName(), fout, end - start);
+        config.getName(), module.getOutFile(), end - start);
+    for (Module chunk : module.getChunks()) {
+      printf("  %s -> %s", chunk.name, chunk.getOutFile());
+    }
+    fingerprint(module, fingerprint, options);
+  }
+
+  /**
+   * Describe the effective configuration options and the plugin's version.
+   *
+   * @param config The configuration options.
+   * @return A description of the configuration options.
+   */
+  private String options(final Config config) {
+    return pluginVersion + ":" + new ReflectionToStringBuilder(config,
+        ToStringStyle.SHORT_PREFIX_STYLE).setExcludeFieldNames("out").toString();
+  }
+
+  /**
+   * Find the output of the last build, if it exists and none of the files of the last build or the
+   * configuration options changed since then. The bundles of the last build aren't saved in the
+   * fingerprint, so the build isn't up to date if the <code>bundlesConfig</code> is gone.
+   *
+   * @param fingerprint The fingerprint's file of the last build.
+   * @param options The current configuration options.
+   * @param config The configuration options.
+   * @return The output's file of the last build or null if it isn't up to date.
+   * @throws IOException If the fingerprint can't be read.
+   */
+  private File upToDate(final File fingerprint, final String options, final Config config)
+      throws IOException {
+    if (!fingerprint.exists()) {
+      return null;
+    }
+    if (config.getBundlesConfig() != null && !config.getBundlesConfig().exists()) {
+      return null;
+    }
+    Properties files = new Properties();
+    InputStream input = null;
+    try {
+      input = new FileInputStream(fingerprint);
+      files.load(input);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+    if (!options.equals(files.remove(CONFIG))) {
+      return null;
+    }
+    String output = (String) files.remove(OUTPUT);
+    if (output == null || !new File(output).exists()) {
+      return null;
+    }
+    for (Entry<Object, Object> file : files.entrySet()) {
+      long lastModified = new File((String) file.getKey()).lastModified();
+      if (!String.valueOf(lastModified).equals(file.getValue())) {
+        return null;
+      }
+    }
+    return new File(output);
+  }
+
+  /**
+   * Save the configuration options and the files of the module graph together with their last
+   * modified date.
+   *
+   * @param module The module graph.
+   * @param fingerprint The fingerprint's file.
+   * @param options The configuration options.
+   * @throws IOException If the fingerprint can't be saved.
+   */
+  private void fingerprint(final Module module, final File fingerprint, final String options)
+      throws IOException {
+    String basedir = System.getProperty("user.dir");
+    Properties files = new Properties();
+    files.setProperty(CONFIG, options);
+    files.setProperty(OUTPUT, module.getOutFile().getPath());
+    List<Module> modules = new ArrayList<Module>(module.getDependencies(true));
+    for (Module chunk : module.getChunks()) {
+      modules.addAll(chunk.getDependencies(true));
+    }
+    for (Module dependency : modules) {
+      File file = new File(basedir, dependency.uri.getPath());
+      files.setProperty(file.getAbsolutePath(), String.valueOf(file.lastModified()));
+    }
+    OutputStream output = null;
+    try {
+      output = new FileOutputStream(fingerprint);
+      files.store(output, "amd4j " + module.name);
+    } finally {
+      IOUtils.closeQuietly(output);
+    }
+  }
+
+  @Override
+  protected Amd4j configure(final Amd4j amd4j) {
+    return amd4j
+        .with("closure.white", new ClosureMinifier(CompilationLevel.WHITESPACE_ONLY))
+        .with("closure", new ClosureMinifier(CompilationLevel.SIMPLE_OPTIMIZATIONS))
+        .with("closure.advanced", new ClosureMinifier(CompilationLevel.ADVANCED_OPTIMIZATIONS));
   }
 
   @Override
@@ -102,19 +298,13 @@ public class OptimizeMojo extends Amd4jMojo {
     if (isEmpty(buildFile)) {
       return super.newConfig();
     } else {
-      return Config.parse(new File(buildFile));
+      return CONFIGS.get(new File(buildFile));
     }
   }
 
   @Override
   protected Config merge(final String name, final Config config) throws IOException {
     super.merge(name, config);
-    if (!isEmpty(this.out)) {
-      fout = this.out.replace("${script.name}", getName(name));
-      File out = new File(fout);
-      out.getParentFile().mkdirs();
-      config.setOut(out);
-    }
     if (inlineText != null) {
       config.setInlineText(inlineText.booleanValue());
     }
@@ -124,9 +314,37 @@ public class OptimizeMojo extends Amd4jMojo {
     if (optimize != null) {
       config.setOptimize(optimize);
     }
+    if (gzip != null) {
+      config.setGzip(gzip.booleanValue());
+    }
+    if (checksum != null) {
+      config.setChecksum(checksum.booleanValue());
+    }
+    if (generateSourceMaps != null) {
+      config.setGenerateSourceMaps(generateSourceMaps.booleanValue());
+    }
+    if (manifest != null) {
+      config.setManifest(manifest);
+    }
+    if (bundlesConfig != null) {
+      config.setBundlesConfig(bundlesConfig);
+    }
+    if (splitNestedDependencies != null) {
+      config.setSplitNestedDependencies(splitNestedDependencies.booleanValue());
+    }
     return config;
   }
 
+  /**
+   * Resolve the output's file of a script.
+   *
+   * @param name The script's name.
+   * @return The output's file.
+   */
+  private String output(final String name) {
+    return out.replace("${script.name}", getName(name));
+  }
+
   @Override
   protected String header(final String name) {
     return "optimization of " + name;
@@ -0,0 +1,118 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+public class OptimizeMojoTest {
+
+  private static final String DIR = "target/optimize-mojo";
+
+  private File dep;
+
+  private File output;
+
+  private List<String> messages;
+
+  @Before
+  public void setUp() throws IOException {
+    FileUtils.deleteQuietly(new File(DIR));
+    dep = new File(DIR, "js/dep.js");
+    output = new File(DIR, "out/main.js");
+    FileUtils.writeStringToFile(new File(DIR, "js/main.js"),
+        "define(['dep'], function (dep) {\n  return dep;\n});\n");
+    FileUtils.writeStringToFile(dep, "define(function () {\n  return 'dep';\n});\n");
+  }
+
+  @Test
+  public void upToDate() throws Exception {
+    OptimizeMojo mojo = mojo();
+    mojo.execute();
+    assertTrue(output.exists());
+    assertTrue(messages.get(0), messages.get(0).startsWith("found 2 dependencies for main"));
+
+    long lastModified = output.lastModified();
+    mojo.execute();
+    assertEquals("main -> " + output.getPath() + " is up to date", messages.get(1));
+    assertEquals(lastModified, output.lastModified());
+  }
+
+  @Test
+  public void rebuildOnOptionChange() throws Exception {
+    OptimizeMojo mojo = mojo();
+    mojo.execute();
+    Whitebox.setInternalState(mojo, "optimize", "white");
+    mojo.execute();
+    assertTrue(messages.get(1), messages.get(1).startsWith("found 2 dependencies for main"));
+    assertFalse(FileUtils.readFileToString(output).contains("\n  return"));
+
+    mojo.execute();
+    assertEquals("main -> " + output.getPath() + " is up to date", messages.get(2));
+  }
+
+  @Test
+  public void rebuildOnDependencyChange() throws Exception {
+    OptimizeMojo mojo = mojo();
+    mojo.execute();
+    FileUtils.writeStringToFile(dep, "define(function () {\n  return 'changed';\n});\n");
+    assertTrue(dep.setLastModified(dep.lastModified() + 10000));
+    mojo.execute();
+    assertTrue(messages.get(1), messages.get(1).startsWith("found 2 dependencies for main"));
+    assertTrue(FileUtils.readFileToString(output).contains("'changed'"));
+  }
+
+  @Test
+  public void refreshManifestWhenUpToDate() throws Exception {
+    File manifest = new File(DIR, "out/manifest.json");
+    OptimizeMojo mojo = mojo();
+    Whitebox.setInternalState(mojo, "manifest", manifest);
+    mojo.execute();
+    FileUtils.writeStringToFile(manifest, "{\n  \"other\": \"other.js\"\n}\n");
+
+    mojo.execute();
+    assertEquals("main -> " + output.getPath() + " is up to date", messages.get(1));
+    assertEquals("{\n  \"main\": \"main.js\",\n  \"other\": \"other.js\"\n}\n",
+        FileUtils.readFileToString(manifest));
+  }
+
+  @Test
+  public void rebuildWithoutBundlesConfig() throws Exception {
+    File bundlesConfig = new File(DIR, "out/bundles.js");
+    OptimizeMojo mojo = mojo();
+    Whitebox.setInternalState(mojo, "bundlesConfig", bundlesConfig);
+    mojo.execute();
+    assertTrue(bundlesConfig.delete());
+
+    mojo.execute();
+    assertTrue(messages.get(1), messages.get(1).startsWith("found 2 dependencies for main"));
+    assertTrue(FileUtils.readFileToString(bundlesConfig).contains("\"main\": [\"main\", \"dep\"]"));
+  }
+
+  private OptimizeMojo mojo() {
+    messages = new ArrayList<String>();
+    OptimizeMojo mojo = new OptimizeMojo();
+    mojo.setLog(new SystemStreamLog() {
+      @Override
+      public void info(final CharSequence content) {
+        messages.add(content.toString());
+      }
+    });
+    mojo.names = new String[]{"main" };
+    mojo.baseUrl = DIR + "/js";
+    mojo.threads = 1;
+    Whitebox.setInternalState(mojo, "out", DIR + "/out/${script.name}.js");
+    Whitebox.setInternalState(mojo, "pluginVersion", "test");
+    return mojo;
+  }
+}
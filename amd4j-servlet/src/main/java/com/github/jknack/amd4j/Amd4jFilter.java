@@ -0,0 +1,327 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import static org.apache.commons.lang3.StringUtils.defaultIfEmpty;
+import static org.apache.commons.lang3.StringUtils.isEmpty;
+import static org.apache.commons.lang3.StringUtils.split;
+import static org.apache.commons.lang3.StringUtils.strip;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Build and serve optimized modules on demand. Useful in development: there is no need to run the
+ * optimizer before reloading a page.
+ * <p>
+ * A bundle is kept in memory together with the last modified date of every file in its module
+ * graph. The bundle is built again only if one of those files changed, and only the changed
+ * files are read again. Responses have an <code>ETag</code>, so browsers get a
+ * <code>304</code> while a bundle doesn't change.
+ * </p>
+ * Init parameters:
+ * <ul>
+ * <li>names: Required. Comma separated list of modules to optimize. A module is served from:
+ * <code>[baseUrl]/[name].js</code>.</li>
+ * <li>baseUrl: Optional. All modules are located relative to this path. Default: /js</li>
+ * <li>buildFile: Optional. A build profile, relative to the servlet context.</li>
+ * <li>optimize: Optional. The minifier/optimizer to use. Default: none</li>
+ * </ul>
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+public class Amd4jFilter implements Filter {
+
+  /**
+   * An optimized module and the last modified date of every file in its module graph.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  private static class Bundle {
+
+    /**
+     * The optimized module.
+     */
+    private final byte[] content;
+
+    /**
+     * The bundle entity tag.
+     */
+    private final String etag;
+
+    /**
+     * The last modified date of every file in the module graph.
+     */
+    private final Map<ResourceURI, Long> files;
+
+    /**
+     * Creates a new {@link Bundle}.
+     *
+     * @param content The optimized module.
+     * @param etag The bundle entity tag.
+     * @param files The last modified date of every file in the module graph.
+     */
+    public Bundle(final byte[] content, final String etag, final Map<ResourceURI, Long> files) {
+      this.content = content;
+      this.etag = etag;
+      this.files = files;
+    }
+  }
+
+  /**
+   * The response encoding.
+   */
+  private static final String ENCODING = "UTF-8";
+
+  /**
+   * The max number of transformed modules to keep in memory.
+   */
+  private static final int CACHE_SIZE = 1024;
+
+  /**
+   * The logging system.
+   */
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * The already built bundles.
+   */
+  private final Map<String, Bundle> bundles = new ConcurrentHashMap<String, Bundle>();
+
+  /**
+   * The modules to optimize and the lock used while building them.
+   */
+  private Map<String, Object> names;
+
+  /**
+   * All modules are located relative to this path.
+   */
+  private String baseUrl;
+
+  /**
+   * The build profile or <code>null</code>.
+   */
+  private String buildFile;
+
+  /**
+   * The minifier/optimizer to use.
+   */
+  private String optimize;
+
+  /**
+   * The resource loader.
+   */
+  private ServletContextResourceLoader loader;
+
+  /**
+   * The optimizer.
+   */
+  private Amd4j amd4j;
+
+  @Override
+  public void init(final FilterConfig filterConfig) throws ServletException {
+    ServletContext context = filterConfig.getServletContext();
+    String names = filterConfig.getInitParameter("names");
+    if (isEmpty(names)) {
+      throw new ServletException("The following init parameter is required: names");
+    }
+    Map<String, Object> locks = new LinkedHashMap<String, Object>();
+    for (String name : split(names, ", \t\n")) {
+      locks.put(name, new Object());
+    }
+    this.names = Collections.unmodifiableMap(locks);
+    baseUrl = "/" + strip(defaultIfEmpty(filterConfig.getInitParameter("baseUrl"), "js"), "/");
+    optimize = defaultIfEmpty(filterConfig.getInitParameter("optimize"), "none");
+    String buildFile = filterConfig.getInitParameter("buildFile");
+    if (!isEmpty(buildFile)) {
+      InputStream input = context.getResourceAsStream(buildFile);
+      if (input == null) {
+        throw new ServletException("Build file not found: " + buildFile);
+      }
+      try {
+        this.buildFile = IOUtils.toString(input, ENCODING);
+      } catch (IOException ex) {
+        throw new ServletException("Can't read: " + buildFile, ex);
+      } finally {
+        IOUtils.closeQuietly(input);
+      }
+    }
+    loader = new ServletContextResourceLoader(context);
+    amd4j = new Amd4j()
+        .with(new TextTransformer())
+        .with(loader)
+        .with(new TransformCache(CACHE_SIZE));
+  }
+
+  @Override
+  public void doFilter(final ServletRequest request, final ServletResponse response,
+      final FilterChain chain) throws IOException, ServletException {
+    HttpServletRequest req = (HttpServletRequest) request;
+    HttpServletResponse rsp = (HttpServletResponse) response;
+    String name = moduleName(req);
+    if (name == null) {
+      chain.doFilter(request, response);
+      return;
+    }
+    Bundle bundle = bundle(name);
+    rsp.setHeader("ETag", bundle.etag);
+    rsp.setHeader("Cache-Control", "no-cache");
+    if (bundle.etag.equals(req.getHeader("If-None-Match"))) {
+      rsp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+    rsp.setContentType("application/javascript");
+    rsp.setCharacterEncoding(ENCODING);
+    rsp.setContentLength(bundle.content.length);
+    rsp.getOutputStream().write(bundle.content);
+  }
+
+  /**
+   * Find the module's name for the request.
+   *
+   * @param request The HTTP request.
+   * @return The module's name or <code>null</code> if the request isn't for one of the modules to
+   *         optimize.
+   */
+  private String moduleName(final HttpServletRequest request) {
+    String path = request.getRequestURI().substring(request.getContextPath().length());
+    String prefix = baseUrl + "/";
+    String suffix = ".js";
+    if (path.startsWith(prefix) && path.endsWith(suffix)) {
+      String name = path.substring(prefix.length(), path.length() - suffix.length());
+      if (names.containsKey(name)) {
+        return name;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Get an up to date bundle for the given module.
+   *
+   * @param name The module's name.
+   * @return An up to date bundle.
+   * @throws IOException If the bundle can't be built.
+   */
+  private Bundle bundle(final String name) throws IOException {
+    Bundle bundle = bundles.get(name);
+    if (bundle != null && upToDate(bundle)) {
+      return bundle;
+    }
+    synchronized (names.get(name)) {
+      bundle = bundles.get(name);
+      if (bundle == null || !upToDate(bundle)) {
+        bundle = build(name);
+        bundles.put(name, bundle);
+      }
+      return bundle;
+    }
+  }
+
+  /**
+   * True, if none of the files in the module graph changed.
+   *
+   * @param bundle The bundle.
+   * @return True, if none of the files in the module graph changed.
+   * @throws IOException If the last modified date can't be read.
+   */
+  private boolean upToDate(final Bundle bundle) throws IOException {
+    for (Entry<ResourceURI, Long> file : bundle.files.entrySet()) {
+      if (loader.lastModified(file.getKey()) != file.getValue()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Build a bundle for the given module.
+   *
+   * @param name The module's name.
+   * @return A new bundle.
+   * @throws IOException If the bundle can't be built.
+   */
+  private Bundle build(final String name) throws IOException {
+    long start = System.currentTimeMillis();
+    Config config = buildFile == null ? new Config() : Config.parse(buildFile);
+    if (isEmpty(config.getBaseUrl())) {
+      config.setBaseUrl(baseUrl);
+    }
+    StringWriter writer = new StringWriter();
+    config.setName(name)
+        .setOptimize(optimize)
+        .setOut(writer);
+    Module module = amd4j.optimize(config);
+    Map<ResourceURI, Long> files = new LinkedHashMap<ResourceURI, Long>();
+    for (Module dependency : module.getDependencies(true)) {
+      files.put(dependency.uri, loader.lastModified(dependency.uri));
+    }
+    byte[] content = writer.toString().getBytes(ENCODING);
+    long end = System.currentTimeMillis();
+    logger.debug("optimization of {} took {}ms", name, end - start);
+    return new Bundle(content, etag(content), files);
+  }
+
+  /**
+   * Creates an entity tag for the given content.
+   *
+   * @param content The content.
+   * @return An entity tag.
+   */
+  private static String etag(final byte[] content) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-1").digest(content);
+      StringBuilder etag = new StringBuilder("\"");
+      for (byte b : digest) {
+        etag.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return etag.append('"').toString();
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException("SHA-1 isn't available", ex);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    bundles.clear();
+  }
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import static org.apache.commons.lang3.Validate.notNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.ServletContext;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Resolve resources from the {@link ServletContext}. The content of a resource is kept in memory
+ * and it is read again only if the resource changed.
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+public class ServletContextResourceLoader implements ResourceLoader {
+
+  /**
+   * A resource content and its last modified date.
+   *
+   * @author edgar.espina
+   * @since 0.2.3
+   */
+  private static class Content {
+
+    /**
+     * The last modified date.
+     */
+    private final long lastModified;
+
+    /**
+     * The resource content.
+     */
+    private final String text;
+
+    /**
+     * Creates a new {@link Content}.
+     *
+     * @param lastModified The last modified date.
+     * @param text The resource content.
+     */
+    public Content(final long lastModified, final String text) {
+      this.lastModified = lastModified;
+      this.text = text;
+    }
+  }
+
+  /**
+   * The servlet context.
+   */
+  private final ServletContext context;
+
+  /**
+   * The content of the already loaded resources.
+   */
+  private final Map<ResourceURI, Content> cache = new ConcurrentHashMap<ResourceURI, Content>();
+
+  /**
+   * Creates a new {@link ServletContextResourceLoader}.
+   *
+   * @param context The servlet context. Required.
+   */
+  public ServletContextResourceLoader(final ServletContext context) {
+    this.context = notNull(context, "The context is required.");
+  }
+
+  @Override
+  public boolean exists(final ResourceURI uri) throws IOException {
+    return context.getResource(uri.getPath()) != null;
+  }
+
+  @Override
+  public String load(final ResourceURI uri) throws IOException {
+    long lastModified = lastModified(uri);
+    Content content = cache.get(uri);
+    if (content == null || content.lastModified != lastModified) {
+      InputStream input = context.getResourceAsStream(uri.getPath());
+      if (input == null) {
+        throw new FileNotFoundException("context:" + uri);
+      }
+      try {
+        content = new Content(lastModified, IOUtils.toString(input, "UTF-8"));
+      } finally {
+        IOUtils.closeQuietly(input);
+      }
+      cache.put(uri, content);
+    }
+    return content.text;
+  }
+
+  /**
+   * The last modified date of a resource or <code>0</code> if the resource doesn't exist.
+   *
+   * @param uri The resource uri.
+   * @return The last modified date of a resource or <code>0</code> if the resource doesn't exist.
+   * @throws IOException If the last modified date can't be read.
+   */
+  public long lastModified(final ResourceURI uri) throws IOException {
+    String path = uri.getPath();
+    String realPath = context.getRealPath(path);
+    if (realPath != null) {
+      return new File(realPath).lastModified();
+    }
+    URL url = context.getResource(path);
+    if (url == null) {
+      return 0;
+    }
+    InputStream input = null;
+    try {
+      URLConnection connection = url.openConnection();
+      input = connection.getInputStream();
+      return connection.getLastModified();
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+}
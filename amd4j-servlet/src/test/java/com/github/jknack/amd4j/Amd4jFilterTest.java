@@ -0,0 +1,214 @@
+package com.github.jknack.amd4j;
+
+import static org.easymock.EasyMock.capture;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.createNiceMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.expectLastCall;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.isA;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.easymock.Capture;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class Amd4jFilterTest {
+
+  private static final File WEBAPP = new File("target/filter-webapp");
+
+  private File dep;
+
+  @Before
+  public void setUp() throws IOException {
+    FileUtils.deleteQuietly(WEBAPP);
+    FileUtils.writeStringToFile(new File(WEBAPP, "js/main.js"),
+        "define(['dep'], function (dep) {\n  return dep;\n});\n");
+    dep = new File(WEBAPP, "js/dep.js");
+    FileUtils.writeStringToFile(dep, "define(function () {\n  return 'dep';\n});\n");
+  }
+
+  @Test
+  public void build() throws Exception {
+    Amd4jFilter filter = filter(null);
+
+    String[] response = get(filter, "/app/js/main.js", null);
+    assertNotNull(response[0]);
+    assertEquals("200", response[1]);
+    assertTrue(response[2], response[2].contains("return 'dep';"));
+    assertTrue(response[2], response[2].contains("return dep;"));
+  }
+
+  @Test
+  public void notModified() throws Exception {
+    Amd4jFilter filter = filter(null);
+    String etag = get(filter, "/app/js/main.js", null)[0];
+
+    String[] response = get(filter, "/app/js/main.js", etag);
+    assertEquals(etag, response[0]);
+    assertEquals("304", response[1]);
+    assertEquals("", response[2]);
+
+    response = get(filter, "/app/js/main.js", "\"other\"");
+    assertEquals(etag, response[0]);
+    assertEquals("200", response[1]);
+  }
+
+  @Test
+  public void rebuildOnDependencyChange() throws Exception {
+    Amd4jFilter filter = filter(null);
+    String etag = get(filter, "/app/js/main.js", null)[0];
+
+    FileUtils.writeStringToFile(dep, "define(function () {\n  return 'changed';\n});\n");
+    assertTrue(dep.setLastModified(dep.lastModified() + 10000));
+
+    String[] response = get(filter, "/app/js/main.js", etag);
+    assertFalse(etag.equals(response[0]));
+    assertEquals("200", response[1]);
+    assertTrue(response[2], response[2].contains("return 'changed';"));
+    assertFalse(response[2], response[2].contains("return 'dep';"));
+  }
+
+  @Test
+  public void passThrough() throws Exception {
+    Amd4jFilter filter = filter(null);
+
+    assertEquals(null, get(filter, "/app/js/dep.js", null));
+    assertEquals(null, get(filter, "/app/main.js", null));
+    assertEquals(null, get(filter, "/app/js/main.css", null));
+  }
+
+  @Test
+  public void buildFileWithOutFile() throws Exception {
+    File out = new File(WEBAPP, "out.js");
+    FileUtils.writeStringToFile(new File(WEBAPP, "build.js"),
+        "({out: '" + out.getPath() + "', inlineText: false})");
+    Amd4jFilter filter = filter("/build.js");
+
+    String[] response = get(filter, "/app/js/main.js", null);
+    assertEquals("200", response[1]);
+    assertTrue(response[2], response[2].contains("return 'dep';"));
+    assertFalse(out.exists());
+  }
+
+  private static Amd4jFilter filter(final String buildFile) throws Exception {
+    ServletContext context = createMock(ServletContext.class);
+    expect(context.getResource(isA(String.class))).andAnswer(new IAnswer<URL>() {
+      @Override
+      public URL answer() throws Throwable {
+        File file = file(getCurrentArguments()[0]);
+        return file.exists() ? file.toURI().toURL() : null;
+      }
+    }).anyTimes();
+    expect(context.getResourceAsStream(isA(String.class))).andAnswer(new IAnswer<InputStream>() {
+      @Override
+      public InputStream answer() throws Throwable {
+        File file = file(getCurrentArguments()[0]);
+        return file.exists() ? new FileInputStream(file) : null;
+      }
+    }).anyTimes();
+    expect(context.getRealPath(isA(String.class))).andAnswer(new IAnswer<String>() {
+      @Override
+      public String answer() throws Throwable {
+        return file(getCurrentArguments()[0]).getPath();
+      }
+    }).anyTimes();
+
+    final Map<String, String> parameters = new HashMap<String, String>();
+    parameters.put("names", "main, other");
+    parameters.put("buildFile", buildFile);
+    FilterConfig config = createMock(FilterConfig.class);
+    expect(config.getServletContext()).andReturn(context).anyTimes();
+    expect(config.getInitParameter(isA(String.class))).andAnswer(new IAnswer<String>() {
+      @Override
+      public String answer() throws Throwable {
+        return parameters.get(getCurrentArguments()[0]);
+      }
+    }).anyTimes();
+
+    replay(context, config);
+
+    Amd4jFilter filter = new Amd4jFilter();
+    filter.init(config);
+    return filter;
+  }
+
+  private static File file(final Object path) {
+    return new File(WEBAPP, (String) path);
+  }
+
+  /**
+   * Send a GET request to the filter.
+   *
+   * @return The ETag, status and body of the response or null if the request was passed through.
+   */
+  private static String[] get(final Amd4jFilter filter, final String uri, final String etag)
+      throws Exception {
+    HttpServletRequest request = createMock(HttpServletRequest.class);
+    expect(request.getRequestURI()).andReturn(uri);
+    expect(request.getContextPath()).andReturn("/app");
+    expect(request.getHeader("If-None-Match")).andReturn(etag).anyTimes();
+
+    final ByteArrayOutputStream body = new ByteArrayOutputStream();
+    Capture<String> tag = new Capture<String>();
+    Capture<Integer> status = new Capture<Integer>();
+    HttpServletResponse response = createNiceMock(HttpServletResponse.class);
+    response.setHeader(eq("ETag"), capture(tag));
+    expectLastCall().anyTimes();
+    response.setStatus(capture(status));
+    expectLastCall().anyTimes();
+    expect(response.getOutputStream()).andReturn(new ServletOutputStream() {
+      @Override
+      public void write(final int b) throws IOException {
+        body.write(b);
+      }
+    }).anyTimes();
+
+    final boolean[] passed = {false };
+    FilterChain chain = createMock(FilterChain.class);
+    chain.doFilter(request, response);
+    expectLastCall().andAnswer(new IAnswer<Object>() {
+      @Override
+      public Object answer() throws Throwable {
+        passed[0] = true;
+        return null;
+      }
+    }).anyTimes();
+
+    replay(request, response, chain);
+
+    filter.doFilter(request, response, chain);
+
+    verify(request);
+    if (passed[0]) {
+      assertFalse(tag.hasCaptured());
+      return null;
+    }
+    return new String[]{tag.getValue(), status.hasCaptured() ? status.getValue().toString() : "200",
+        body.toString("UTF-8") };
+  }
+}
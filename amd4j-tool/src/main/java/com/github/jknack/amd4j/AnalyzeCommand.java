@@ -17,8 +17,12 @@
  */
 package com.github.jknack.amd4j;
 
+import static org.apache.commons.lang3.Validate.isTrue;
+
 import java.io.IOException;
+import java.util.List;
 
+import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 
 /**
@@ -30,13 +34,61 @@ import com.beust.jcommander.Parameters;
 @Parameters(commandNames = "-a", separators = "=")
 public class AnalyzeCommand extends BaseCommand {
 
+  /**
+   * The percentage's scale.
+   */
+  private static final int PERCENT = 100;
+
+  /**
+   * The output format.
+   */
+  @Parameter(names = "-format", description = "The output format, one of: tree (an indented "
+      + "tree), dot (a Graphviz digraph), json (an adjacency list) or split (candidates for lazy "
+      + "loading: modules with a single dependent, with the size of the modules only they load)."
+      + " The dot and json formats print every module once, with its size in bytes. Default: tree")
+  private String format = "tree";
+
   @Override
   public void doExecute(final Amd4j amd4j, final Config config) throws IOException {
-    System.out.printf("analyzing %s...\n", config.getName());
+    isTrue(format.equals("tree") || format.equals("dot") || format.equals("json")
+        || format.equals("split"), "unknown format: %s, expected one of: tree, dot, json, split",
+        format);
+    if (format.equals("split")) {
+      split(new ModuleGraph(amd4j.analyze(config)));
+      return;
+    }
+    if (!format.equals("tree")) {
+      // print the graph only, so the output can be piped to other tools
+      ModuleGraph graph = new ModuleGraph(amd4j.analyze(config));
+      getOut().print(format.equals("dot") ? graph.toDot() : graph.toJson());
+      return;
+    }
+    getOut().printf("analyzing %s...\n", config.getName());
     long start = System.currentTimeMillis();
     Module module = amd4j.analyze(config);
     long end = System.currentTimeMillis();
-    System.out.printf("%s\n", module.toStringTree().trim());
-    System.out.printf("analysis of %s took %sms\n\n", module.uri, end - start);
+    getOut().printf("%s\n", module.toStringTree().trim());
+    List<List<Module>> cycles = new ModuleGraph(module).getCycles();
+    if (!cycles.isEmpty()) {
+      getOut().printf("circular dependencies:\n%s", ModuleGraph.toString(cycles));
+    }
+    getOut().printf("analysis of %s took %sms\n\n", module.uri, end - start);
+  }
+
+  /**
+   * Print the candidates for lazy loading, the largest first, like:
+   * <code>a -&gt; b: 2048 bytes (20%), 3 modules</code>.
+   *
+   * @param graph The module graph.
+   */
+  private void split(final ModuleGraph graph) {
+    Module root = graph.getRoot();
+    long total = graph.getRetainedSize(root);
+    getOut().printf("split points of %s (%s bytes):\n", root.name, total);
+    for (Module module : graph.getSplitPoints()) {
+      long size = graph.getRetainedSize(module);
+      getOut().printf("  %s -> %s: %s bytes (%s%%), %s modules\n", graph.getDominator(module),
+          module, size, total == 0 ? 0 : size * PERCENT / total, graph.getDominated(module).size());
+    }
   }
 }
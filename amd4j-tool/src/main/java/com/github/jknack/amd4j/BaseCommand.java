@@ -19,9 +19,11 @@ package com.github.jknack.amd4j;
 
 import static org.apache.commons.lang3.StringUtils.isEmpty;
 import static org.apache.commons.lang3.Validate.isTrue;
+import static org.apache.commons.lang3.Validate.notNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -37,6 +39,16 @@ import com.beust.jcommander.Parameter;
  */
 public abstract class BaseCommand implements Command {
 
+  /**
+   * The max number of transformed modules to keep in memory.
+   */
+  private static final int CACHE_SIZE = 1024;
+
+  /**
+   * Transformed modules, shared by all the builds of a daemon.
+   */
+  private static final TransformCache CACHE = new TransformCache(CACHE_SIZE);
+
   /**
    * The file to process.
    */
@@ -66,19 +78,38 @@ public abstract class BaseCommand implements Command {
           + "dynamic/runtime calls. Default: false", arity = 1)
   protected Boolean findNestedDependencies;
 
+  /**
+   * Fail if the module graph has circular dependencies.
+   */
+  @Parameter(names = "-failOnCycles",
+      description = "Fail if the module graph has circular dependencies. Default: false",
+      arity = 1)
+  protected Boolean failOnCycles;
+
   /**
    * Turn on/off debug mode.
    */
   @Parameter(names = "-X", description = "turn on debug mode")
   private boolean verbose;
 
+  /**
+   * The command's output.
+   */
+  private PrintStream out = System.out;
+
+  /**
+   * The working directory.
+   */
+  private File workDir = new File(System.getProperty("user.dir"));
+
   @Override
   public void execute() throws IOException {
-    String userDir = System.getProperty("user.dir");
+    String userDir = workDir.getPath();
 
-    Amd4j amd4j = new Amd4j()
+    Amd4j amd4j = configure(new Amd4j()
         .with(new TextTransformer())
-        .with(new FileResourceLoader(new File(userDir)));
+        .with(new FileResourceLoader(workDir))
+        .with(CACHE));
 
     Config config = merge(newConfig());
     if (isEmpty(config.getBaseUrl())) {
@@ -88,12 +119,22 @@ public abstract class BaseCommand implements Command {
       config.setBaseUrl(config.getBaseUrl().replace(userDir, ""));
     }
     if (verbose) {
-      System.out.printf("options:\n%s\n", config);
+      out.printf("options:\n%s\n", config);
     }
     isTrue(!isEmpty(config.getName()), "The following option is required: %s", "name");
     doExecute(amd4j, config);
   }
 
+  /**
+   * Customize the {@link Amd4j} instance, like registering additional minifiers.
+   *
+   * @param amd4j The default {@link Amd4j} instance.
+   * @return The {@link Amd4j} instance to use.
+   */
+  protected Amd4j configure(final Amd4j amd4j) {
+    return amd4j;
+  }
+
   /**
    * Execute the command.
    *
@@ -130,6 +171,9 @@ public abstract class BaseCommand implements Command {
     if (findNestedDependencies != null) {
       config.setFindNestedDependencies(findNestedDependencies.booleanValue());
     }
+    if (failOnCycles != null) {
+      config.setFailOnCycles(failOnCycles.booleanValue());
+    }
     // merge paths
     for (Entry<String, String> path : paths.entrySet()) {
       config.path(path.getKey(), path.getValue());
@@ -137,10 +181,48 @@ public abstract class BaseCommand implements Command {
     return config;
   }
 
+  /**
+   * Resolve a path against the working directory, which is the working directory of the client
+   * when the command is forwarded to a {@link DaemonCommand}.
+   *
+   * @param path The file's path.
+   * @return An absolute file.
+   */
+  protected File file(final File path) {
+    if (path.isAbsolute()) {
+      return path;
+    }
+    return new File(workDir, path.getPath());
+  }
+
+  /**
+   * The command's output.
+   *
+   * @return The command's output.
+   */
+  protected PrintStream getOut() {
+    return out;
+  }
+
+  /**
+   * True, if debug mode is on.
+   *
+   * @return True, if debug mode is on.
+   */
+  protected boolean isVerbose() {
+    return verbose;
+  }
+
   @Override
   public void setVerbose(final boolean verbose) {
     if (!this.verbose) {
       this.verbose = verbose;
     }
   }
+
+  @Override
+  public void setConsole(final PrintStream out, final File workDir) {
+    this.out = notNull(out, "The out is required.");
+    this.workDir = notNull(workDir, "The workDir is required.");
+  }
 }
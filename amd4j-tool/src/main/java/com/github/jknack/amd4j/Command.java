@@ -17,7 +17,9 @@
  */
 package com.github.jknack.amd4j;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 
 /**
  * The command strategy.
@@ -39,4 +41,13 @@ public interface Command {
    * @param verbose True, for turn on debug mode.
    */
   void setVerbose(boolean verbose);
+
+  /**
+   * Set the console of the command: where it prints and where relative paths are resolved from.
+   * Commands forwarded to a {@link DaemonCommand} use the console of the client.
+   *
+   * @param out The command's output.
+   * @param workDir The working directory.
+   */
+  void setConsole(PrintStream out, File workDir);
 }
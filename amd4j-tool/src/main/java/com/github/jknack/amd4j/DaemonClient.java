@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Forward a command to a {@link DaemonCommand} and print the response.
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+final class DaemonClient {
+
+  /**
+   * Not allowed.
+   */
+  private DaemonClient() {
+  }
+
+  /**
+   * Forward the command arguments to the daemon listening on the given port.
+   *
+   * @param port The daemon's port.
+   * @param args The command arguments.
+   * @return The command exit status.
+   * @throws IOException If the daemon isn't running or the connection fails.
+   */
+  public static int forward(final int port, final List<String> args) throws IOException {
+    Socket socket = new Socket(InetAddress.getByName(null), port);
+    try {
+      PrintStream request = new PrintStream(socket.getOutputStream(), true,
+          DaemonCommand.ENCODING);
+      request.println(System.getProperty("user.dir"));
+      for (String arg : args) {
+        request.println(arg);
+      }
+      request.println();
+      request.flush();
+
+      BufferedReader response = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), DaemonCommand.ENCODING));
+      String line = response.readLine();
+      while (line != null) {
+        if (line.startsWith(DaemonCommand.EXIT)) {
+          return Integer.parseInt(line.substring(DaemonCommand.EXIT.length()));
+        }
+        System.out.println(line);
+        line = response.readLine();
+      }
+      // connection closed before the exit status
+      return 1;
+    } finally {
+      IOUtils.closeQuietly(socket);
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright (c) 2013 Edgar Espina
+ *
+ * This file is part of amd4j (https://github.com/jknack/amd4j)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.jknack.amd4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.slf4j.ILoggerFactory;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.OutputStreamAppender;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Start a long-running amd4j process listening on a loopback port. Commands are forwarded by
+ * {@link Main} when the <code>daemon=port</code> option is present, so the JVM, Rhino and the
+ * closure compiler are loaded and warmed up once.
+ * <p>
+ * Requests are executed one at a time. A command prints to the client and resolves relative paths
+ * from the working directory of the client, log messages are sent to the client while its command
+ * runs. A daemon can't be started from a daemon.
+ * </p>
+ * <p>
+ * <strong>Security:</strong> the port isn't authenticated. Any user of the machine can connect to
+ * it and run commands, which read and write files (of any directory) with the permissions of the
+ * user running the daemon. Don't run a daemon on a shared machine.
+ * </p>
+ *
+ * @author edgar.espina
+ * @since 0.2.3
+ */
+@Parameters(commandNames = "-d", separators = "=")
+public class DaemonCommand implements Command {
+
+  /**
+   * The default port.
+   */
+  public static final int DEFAULT_PORT = 7341;
+
+  /**
+   * The encoding used by the daemon protocol.
+   */
+  static final String ENCODING = "UTF-8";
+
+  /**
+   * Mark the end of a response. The exit status is appended.
+   */
+  static final String EXIT = "amd4j.exit:";
+
+  /**
+   * The name of the log appender of a client.
+   */
+  private static final String CLIENT = "amd4j.client";
+
+  /**
+   * The port to listen on.
+   */
+  @Parameter(names = "-port", description = "Listen on the given loopback port. Default: 7341")
+  private int port = DEFAULT_PORT;
+
+  /**
+   * Turn on/off debug mode.
+   */
+  private boolean verbose;
+
+  /**
+   * The daemon's output.
+   */
+  private PrintStream out = System.out;
+
+  @Override
+  public void execute() throws IOException {
+    ServerSocket server = new ServerSocket(port, 0, InetAddress.getByName(null));
+    try {
+      out.printf("amd4j daemon listening on %s\n", server.getLocalSocketAddress());
+      while (true) {
+        Socket socket = server.accept();
+        try {
+          serve(socket);
+        } catch (IOException ex) {
+          if (verbose) {
+            ex.printStackTrace(out);
+          }
+        } finally {
+          IOUtils.closeQuietly(socket);
+        }
+      }
+    } finally {
+      IOUtils.closeQuietly(server);
+    }
+  }
+
+  /**
+   * Execute a forwarded command. The request is: the client working directory followed by the
+   * command arguments, one per line and terminated by an empty line. The response is the command
+   * output followed by {@link #EXIT} and the exit status.
+   *
+   * @param socket The client connection.
+   * @throws IOException If the connection fails.
+   */
+  private void serve(final Socket socket) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+        ENCODING));
+    String workDir = reader.readLine();
+    List<String> args = new ArrayList<String>();
+    String line = reader.readLine();
+    while (line != null && line.length() > 0) {
+      args.add(line);
+      line = reader.readLine();
+    }
+    PrintStream client = new PrintStream(socket.getOutputStream(), true, ENCODING);
+    List<Appender<ILoggingEvent>> console = redirectLogs(client);
+    int status = 0;
+    try {
+      new Main().forward(args.toArray(new String[args.size()]), client, new File(workDir));
+    } catch (IllegalArgumentException ex) {
+      status = error(client, ex);
+    } catch (ParameterException ex) {
+      status = error(client, ex);
+    } catch (Exception ex) {
+      status = error(client, ex);
+    } finally {
+      restoreLogs(console);
+    }
+    client.println(EXIT + status);
+    client.flush();
+  }
+
+  /**
+   * Send the log messages to the client, instead of the daemon's console.
+   *
+   * @param client The client output.
+   * @return The appenders of the daemon's console or <code>null</code> if the logging system isn't
+   *         logback.
+   */
+  private static List<Appender<ILoggingEvent>> redirectLogs(final PrintStream client) {
+    ILoggerFactory factory = LoggerFactory.getILoggerFactory();
+    if (!(factory instanceof LoggerContext)) {
+      return null;
+    }
+    LoggerContext context = (LoggerContext) factory;
+    Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+    List<Appender<ILoggingEvent>> console = new ArrayList<Appender<ILoggingEvent>>();
+    Iterator<Appender<ILoggingEvent>> appenders = root.iteratorForAppenders();
+    while (appenders.hasNext()) {
+      console.add(appenders.next());
+    }
+    for (Appender<ILoggingEvent> appender : console) {
+      root.detachAppender(appender);
+    }
+    PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+    encoder.setContext(context);
+    encoder.setPattern("%msg%n");
+    encoder.setCharset(Charset.forName(ENCODING));
+    encoder.start();
+    OutputStreamAppender<ILoggingEvent> appender = new OutputStreamAppender<ILoggingEvent>();
+    appender.setName(CLIENT);
+    appender.setContext(context);
+    appender.setEncoder(encoder);
+    // the connection is closed by the daemon, not by the appender
+    appender.setOutputStream(new CloseShieldOutputStream(client));
+    appender.start();
+    root.addAppender(appender);
+    return console;
+  }
+
+  /**
+   * Send the log messages back to the daemon's console.
+   *
+   * @param console The appenders of the daemon's console or <code>null</code>.
+   */
+  private static void restoreLogs(final List<Appender<ILoggingEvent>> console) {
+    if (console == null) {
+      return;
+    }
+    LoggerContext context = (LoggerContext) LoggerFactory.getILoggerFactory();
+    Logger root = context.getLogger(Logger.ROOT_LOGGER_NAME);
+    Appender<ILoggingEvent> appender = root.getAppender(CLIENT);
+    if (appender != null) {
+      root.detachAppender(appender);
+      appender.stop();
+    }
+    for (Appender<ILoggingEvent> consoleAppender : console) {
+      root.addAppender(consoleAppender);
+    }
+  }
+
+  /**
+   * Report an error to the client.
+   *
+   * @param client The client output.
+   * @param ex The error.
+   * @return The exit status.
+   */
+  private int error(final PrintStream client, final Exception ex) {
+    client.println("error: " + ex.getMessage());
+    if (verbose) {
+      ex.printStackTrace(client);
+    }
+    return 1;
+  }
+
+  @Override
+  public void setVerbose(final boolean verbose) {
+    this.verbose = verbose;
+  }
+
+  @Override
+  public void setConsole(final PrintStream out, final File workDir) {
+    this.out = out;
+  }
+}
@@ -19,8 +19,11 @@ package com.github.jknack.amd4j;
 
 import static org.apache.commons.lang3.Validate.isTrue;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -39,6 +42,11 @@ import com.beust.jcommander.ParameterException;
  */
 public class Main {
 
+  /**
+   * Forward the command to an amd4j daemon listening on the given port.
+   */
+  private static final String DAEMON = "-daemon=";
+
   /**
    * The logging system.
    */
@@ -68,6 +76,7 @@ public class Main {
     commander = new JCommander(this);
     commander.addCommand(new AnalyzeCommand());
     commander.addCommand(new OptimizerCommand());
+    commander.addCommand(new DaemonCommand());
   }
 
   /**
@@ -77,6 +86,33 @@ public class Main {
    * @throws IOException If something goes wrong.
    */
   public void run(final String[] args) throws IOException {
+    command(args).execute();
+  }
+
+  /**
+   * Parse and execute a command forwarded to a {@link DaemonCommand}.
+   *
+   * @param args The command arguments.
+   * @param out The client output.
+   * @param workDir The client working directory.
+   * @throws IOException If something goes wrong.
+   */
+  void forward(final String[] args, final PrintStream out, final File workDir)
+      throws IOException {
+    Command command = command(args);
+    isTrue(!(command instanceof DaemonCommand), "command not allowed in a daemon: %s",
+        commander.getParsedCommand());
+    command.setConsole(out, workDir);
+    command.execute();
+  }
+
+  /**
+   * Parse a command.
+   *
+   * @param args The command arguments.
+   * @return The command.
+   */
+  private Command command(final String[] args) {
     // parse arguments
     commander.parse(args);
     // get command
@@ -87,10 +123,9 @@ public class Main {
     isTrue(parseCommand != null, "unknown command: %s", commander.getParsedCommand());
     current = parseCommand;
     List<Object> objects = parseCommand.getObjects();
-    // execute command
     Command command = (Command) objects.get(0);
     command.setVerbose(verbose == null ? Boolean.FALSE : verbose);
-    command.execute();
+    return command;
   }
 
   /**
@@ -100,13 +135,27 @@ public class Main {
    * @throws IOException If something goes wrong.
    */
   public static void main(final String[] args) throws IOException {
+    String[] jcommanderArgs = convertArgs(args);
+    int port = daemonPort(jcommanderArgs);
+    if (port > 0) {
+      List<String> forward = new ArrayList<String>();
+      for (String arg : jcommanderArgs) {
+        if (!arg.startsWith(DAEMON)) {
+          forward.add(arg);
+        }
+      }
+      System.exit(DaemonClient.forward(port, forward));
+    }
     Main executor = new Main();
     try {
-      executor.run(convertArgs(args));
+      executor.run(jcommanderArgs);
     } catch (IllegalArgumentException ex) {
       executor.usage(ex);
     } catch (ParameterException ex) {
       executor.usage(ex);
+    } catch (IllegalStateException ex) {
+      System.err.println("error: " + ex.getMessage());
+      System.exit(1);
     }
   }
 
@@ -154,6 +203,22 @@ public class Main {
     return result;
   }
 
+  /**
+   * Find the <code>daemon=port</code> option.
+   *
+   * @param args The jcommander arguments.
+   * @return The daemon's port or <code>0</code> if the command should run in this process.
+   */
+  private static int daemonPort(final String[] args) {
+    for (String arg : args) {
+      if (arg.startsWith(DAEMON)) {
+        String port = arg.substring(DAEMON.length());
+        return port.length() == 0 ? DaemonCommand.DEFAULT_PORT : Integer.parseInt(port);
+      }
+    }
+    return 0;
+  }
+
   /**
    * Prefix options with "-" required by {@link JCommander}.
    *
@@ -38,16 +38,16 @@ import com.google.javascript.jscomp.CompilationLevel;
 @Parameters(commandNames = "-o", separators = "=")
 public class OptimizerCommand extends BaseCommand {
 
-  static {
-    Minifier.register("closure.white", new ClosureMinifier(CompilationLevel.WHITESPACE_ONLY));
-    Minifier.register("closure", new ClosureMinifier(CompilationLevel.SIMPLE_OPTIMIZATIONS));
-    Minifier.register("closure.advanced", new ClosureMinifier(
-        CompilationLevel.ADVANCED_OPTIMIZATIONS));
-  }
+  /**
+   * Parsed build files, shared by all the builds of a daemon.
+   */
+  private static final ConfigCache CONFIGS = new ConfigCache();
+
   /**
    * The output's file.
    */
-  @Parameter(names = "-out", description = "Output file")
+  @Parameter(names = "-out", description = "Output file. A ${hash} placeholder is replaced by "
+      + "the hash of the output")
   private File out;
 
   /**
@@ -72,6 +72,49 @@ public class OptimizerCommand extends BaseCommand {
       + "are supported: none, white (strip comment, spaces and lines). Default: none")
   private String optimize;
 
+  /**
+   * Write a .gz file next to the output.
+   */
+  @Parameter(names = "-gzip", description = "Write a .gz file next to the output. Default: false",
+      arity = 1)
+  private Boolean gzip;
+
+  /**
+   * Write checksum files next to the outputs.
+   */
+  @Parameter(names = "-checksum", description = "Write a .sha1 checksum file next to each "
+      + "output. Default: false", arity = 1)
+  private Boolean checksum;
+
+  /**
+   * Write a source map next to the output.
+   */
+  @Parameter(names = "-generateSourceMaps", description = "Write a .map source map file next to "
+      + "the output. Default: false", arity = 1)
+  private Boolean generateSourceMaps;
+
+  /**
+   * A JSON manifest of the outputs.
+   */
+  @Parameter(names = "-manifest", description = "Record the output's file in a JSON manifest. "
+      + "Useful if the output has a ${hash} placeholder")
+  private File manifest;
+
+  /**
+   * A require.js configuration with the bundles of the outputs.
+   */
+  @Parameter(names = "-bundlesConfig", description = "Record the modules of the output in a "
+      + "require.js bundles configuration. Save it in the baseUrl of the application")
+  private File bundlesConfig;
+
+  /**
+   * Optimize nested require calls into lazy loaded chunks.
+   */
+  @Parameter(names = "-splitNestedDependencies", description = "Optimize the dependencies of "
+      + "nested require calls into lazy loaded chunks: <out>-<n>.js. Requires -bundlesConfig. "
+      + "Default: false", arity = 1)
+  private Boolean splitNestedDependencies;
+
   /**
    * An optional build profile.
    */
@@ -80,22 +123,35 @@ public class OptimizerCommand extends BaseCommand {
 
   @Override
   public void doExecute(final Amd4j amd4j, final Config config) throws IOException {
-    isTrue(config.getOut() != null, "The following option is required: %s", "out");
+    isTrue(config.getOutFile() != null, "The following option is required: %s", "out");
     isTrue(!isEmpty(config.getBaseUrl()), "The following option is required: %s", "baseUrl");
 
-    System.out.printf("optimizing %s...\n", config.getName());
+    getOut().printf("optimizing %s...\n", config.getName());
     long start = System.currentTimeMillis();
     Module module = amd4j.optimize(config);
     long end = System.currentTimeMillis();
-    System.out.printf("%s\n", module.toStringTree().trim());
-    System.out.printf("optimization of %s took %sms\n\n", out.getPath(), end - start,
-        out.getAbsolutePath());
+    if (isVerbose()) {
+      getOut().printf("%s\n", module.toStringTree().trim());
+    }
+    for (Module chunk : module.getChunks()) {
+      getOut().printf("  %s -> %s\n", chunk.name, chunk.getOutFile().getPath());
+    }
+    getOut().printf("optimization of %s took %sms\n\n", module.getOutFile().getPath(),
+        end - start);
+  }
+
+  @Override
+  protected Amd4j configure(final Amd4j amd4j) {
+    return amd4j
+        .with("closure.white", new ClosureMinifier(CompilationLevel.WHITESPACE_ONLY))
+        .with("closure", new ClosureMinifier(CompilationLevel.SIMPLE_OPTIMIZATIONS))
+        .with("closure.advanced", new ClosureMinifier(CompilationLevel.ADVANCED_OPTIMIZATIONS));
   }
 
   @Override
   protected Config newConfig() throws IOException {
     if (buildFile.size() == 1) {
-      return Config.parse(new File(buildFile.get(0)));
+      return CONFIGS.get(file(new File(buildFile.get(0))));
     } else {
       return super.newConfig();
     }
@@ -105,7 +161,7 @@ public class OptimizerCommand extends BaseCommand {
   protected Config merge(final Config config) throws IOException {
     super.merge(config);
     if (out != null) {
-      config.setOut(out);
+      config.setOut(file(out));
     }
     if (inlineText != null) {
       config.setInlineText(inlineText.booleanValue());
@@ -116,6 +172,24 @@ public class OptimizerCommand extends BaseCommand {
     if (optimize != null) {
       config.setOptimize(optimize);
     }
+    if (gzip != null) {
+      config.setGzip(gzip.booleanValue());
+    }
+    if (checksum != null) {
+      config.setChecksum(checksum.booleanValue());
+    }
+    if (generateSourceMaps != null) {
+      config.setGenerateSourceMaps(generateSourceMaps.booleanValue());
+    }
+    if (manifest != null) {
+      config.setManifest(file(manifest));
+    }
+    if (bundlesConfig != null) {
+      config.setBundlesConfig(file(bundlesConfig));
+    }
+    if (splitNestedDependencies != null) {
+      config.setSplitNestedDependencies(splitNestedDependencies.booleanValue());
+    }
     return config;
   }
 }
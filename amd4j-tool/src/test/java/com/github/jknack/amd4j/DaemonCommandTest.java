@@ -0,0 +1,109 @@
+package com.github.jknack.amd4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+public class DaemonCommandTest {
+
+  private static final File WORK_DIR = new File("target/daemon-client").getAbsoluteFile();
+
+  private static int port;
+
+  @BeforeClass
+  public static void start() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    port = socket.getLocalPort();
+    socket.close();
+    final DaemonCommand command = new DaemonCommand();
+    command.setConsole(new PrintStream(new ByteArrayOutputStream()), WORK_DIR);
+    Whitebox.setInternalState(command, "port", port);
+    Thread daemon = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          command.execute();
+        } catch (IOException ex) {
+          ex.printStackTrace();
+        }
+      }
+    });
+    daemon.setDaemon(true);
+    daemon.start();
+
+    FileUtils.deleteQuietly(WORK_DIR);
+    FileUtils.writeStringToFile(new File(WORK_DIR, "js/a.js"),
+        "define(['b'], function (b) {\n  return b;\n});\n");
+    FileUtils.writeStringToFile(new File(WORK_DIR, "js/b.js"),
+        "define(function () {\n  return 'b';\n});\n");
+  }
+
+  @Test
+  public void optimize() throws Exception {
+    String[] response = forward("-o", "-name=a", "-baseUrl=js", "-out=out/a.js");
+    assertEquals("0", response[0]);
+    assertTrue(response[1], response[1].startsWith("optimizing a...\n"));
+    assertTrue(response[1], response[1].contains("optimization of " + WORK_DIR + "/out/a.js"));
+    // relative paths are resolved from the client working directory
+    assertTrue(FileUtils.readFileToString(new File(WORK_DIR, "out/a.js")).contains("return 'b';"));
+    assertFalse(new File("out/a.js").exists());
+  }
+
+  @Test
+  public void error() throws Exception {
+    String[] response = forward("-o", "-name=a", "-baseUrl=js");
+    assertEquals("1", response[0]);
+    assertEquals("error: The following option is required: out\n", response[1]);
+  }
+
+  @Test
+  public void daemonInDaemon() throws Exception {
+    String[] response = forward("-d", "-port=" + (port + 1));
+    assertEquals("1", response[0]);
+    assertEquals("error: command not allowed in a daemon: -d\n", response[1]);
+  }
+
+  /**
+   * Forward a command from the {@link #WORK_DIR}.
+   *
+   * @return The exit status and the output of the command.
+   */
+  private static String[] forward(final String... args) throws Exception {
+    PrintStream stdout = System.out;
+    String userDir = System.getProperty("user.dir");
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    try {
+      System.setOut(new PrintStream(output, true, "UTF-8"));
+      System.setProperty("user.dir", WORK_DIR.getPath());
+      int status = -1;
+      for (int i = 0; status < 0; i++) {
+        try {
+          status = DaemonClient.forward(port, Arrays.asList(args));
+        } catch (ConnectException ex) {
+          // the daemon isn't listening yet
+          if (i == 50) {
+            throw ex;
+          }
+          Thread.sleep(100);
+        }
+      }
+      return new String[]{String.valueOf(status), output.toString("UTF-8") };
+    } finally {
+      System.setProperty("user.dir", userDir);
+      System.setOut(stdout);
+    }
+  }
+}